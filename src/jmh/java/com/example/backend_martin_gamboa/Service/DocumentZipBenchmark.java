@@ -0,0 +1,92 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Entity.DocumentEntity;
+import com.example.backend_martin_gamboa.Storage.LocalBlobStore;
+import com.example.backend_martin_gamboa.Storage.StoredBlob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//ZIP of the loan documents (DocumentController.loanDocs) and the read-ahead export (loansDocs), read from a LocalBlobStore in a temporary folder.
+//Contents are random bytes, like scanned PDFs they barely compress. The ZIP goes to a discarding stream.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentZipBenchmark {
+    @Param({"1", "10", "50"})
+    public int docCount;
+
+    @Param({"16384", "1048576"})
+    public int docSize;
+
+    private Path root;
+    private DocumentExportService exportService;
+    private final List<DocumentEntity> docs = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("zip-benchmark");
+        DocumentService documentService = new DocumentService();
+        documentService.blobStore = new LocalBlobStore(root.toString());
+        documentService.meterRegistry = new SimpleMeterRegistry();
+        Random random = new Random(42);
+        byte[] content = new byte[docSize];
+        for (int i = 0; i < docCount; i++) {
+            random.nextBytes(content);
+            StoredBlob blob = documentService.blobStore.put(new ByteArrayInputStream(content), false);
+            DocumentEntity doc = new DocumentEntity();
+            doc.setId(i + 1L);
+            doc.setLoanId(1L);
+            doc.setDocName("documento_" + i + ".pdf");
+            doc.setStorageKey(blob.getKey());
+            doc.setContentSize(blob.getSize());
+            docs.add(doc);
+        }
+        exportService = new DocumentExportService(documentService, 4, 4, 2 * 1024 * 1024, 32 * 1024 * 1024);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        exportService.shutdown();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void loanDocs() throws IOException {
+        exportService.streamZip(docs, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void loansDocs() throws IOException {
+        exportService.writeZip(docs, true, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import com.example.backend_martin_gamboa.Repository.LoanRepository;
+import com.example.backend_martin_gamboa.Repository.UserDebt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Pageable;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Evaluation queue over a large loan table: walking it by keyset pages, the old load everything and filter,
+//and scoring one page the way the background job does. The repository is in memory, so only our code is measured:
+//walkQueue against filterAllLoans compares the two access patterns, the cost of the real query is left to the load test.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluationQueueBenchmark {
+    private static final int PAGE_SIZE = LoanService.MAX_PAGE_SIZE;
+
+    @Param({"10000", "100000"})
+    public int loanCount;
+
+    private LoanEntity[] table; //table[i] has id i + 1
+    private final Map<Long, Double> debts = new HashMap<>();
+    private LoanService loanService;
+    private LoanScoringService scoringService;
+    private List<LoanEntity> firstPage;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        table = new LoanEntity[loanCount];
+        for (int i = 0; i < loanCount; i++) {
+            LoanEntity loan = new LoanEntity();
+            loan.setId(i + 1L);
+            loan.setUserId(1L + random.nextInt(Math.max(1, loanCount / 3)));
+            loan.setLoantype(1 + random.nextInt(4));
+            loan.setStatus(1 + random.nextInt(8));
+            loan.setCapital(10_000_000.0 + random.nextInt(190) * 1_000_000);
+            loan.setPropCost(loan.getCapital() / (0.4 + random.nextDouble() * 0.6));
+            loan.setTerm(5 + random.nextInt(26));
+            loan.setInterest((20 + random.nextInt(71)) / 10.0);
+            loan.setMonthQuote(LoanMath.monthTotalPayment(loan.getCapital(), loan.getTerm(), loan.getInterest()));
+            table[i] = loan;
+            if (!LoanService.INACTIVE.contains(loan.getStatus())) {
+                debts.merge(loan.getUserId(), loan.getMonthQuote(), Double::sum);
+            }
+        }
+        loanService = new LoanService();
+        loanService.loanRepository = inMemoryRepository();
+        scoringService = new LoanScoringService(loanService, loanService.loanRepository, null, null, null, PAGE_SIZE, 0);
+        firstPage = loanService.getLoansForEvaluate(null, PAGE_SIZE, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scoringService.shutdown();
+    }
+
+    //Every loan to evaluate, one keyset page after the other
+    @Benchmark
+    public int walkQueue() {
+        int total = 0;
+        Long after = null;
+        List<LoanEntity> page;
+        do {
+            page = loanService.getLoansForEvaluate(after, PAGE_SIZE, false);
+            total += page.size();
+            if (!page.isEmpty()) after = page.get(page.size() - 1).getId();
+        } while (page.size() == PAGE_SIZE);
+        return total;
+    }
+
+    //The whole table in memory, dropping the loans that are not evaluated
+    @Benchmark
+    public int filterAllLoans() {
+        List<LoanEntity> loans = new ArrayList<>(List.of(table));
+        loans.removeIf(loan -> LoanService.NOT_FOR_EVALUATION.contains(loan.getStatus()));
+        return loans.size();
+    }
+
+    @Benchmark
+    public Object scorePage() {
+        return scoringService.scoreChunk(firstPage);
+    }
+
+    //Answers the three queries the queue uses from the table, like an index on (status, id) would
+    private LoanRepository inMemoryRepository() {
+        return (LoanRepository) Proxy.newProxyInstance(LoanRepository.class.getClassLoader(), new Class<?>[]{LoanRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findByStatusNotInAndIdGreaterThan" -> page((Collection<?>) args[0], (Long) args[1], (Pageable) args[2], false);
+                    case "findByStatusNotInAndIdLessThan" -> page((Collection<?>) args[0], (Long) args[1], (Pageable) args[2], true);
+                    case "sumMonthQuoteByUserIdInAndStatusNotIn" -> userDebts((Collection<?>) args[0]);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryLoanRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private List<LoanEntity> page(Collection<?> statuses, Long id, Pageable pageable, boolean descending) {
+        List<LoanEntity> page = new ArrayList<>(pageable.getPageSize());
+        int step = descending ? -1 : 1;
+        int i = descending ? (int) Math.min(id - 2, table.length - 1) : (int) Math.min(id, table.length);
+        for (; i >= 0 && i < table.length && page.size() < pageable.getPageSize(); i += step) {
+            if (!statuses.contains(table[i].getStatus())) page.add(table[i]);
+        }
+        return page;
+    }
+
+    private List<UserDebt> userDebts(Collection<?> userIds) {
+        List<UserDebt> result = new ArrayList<>(userIds.size());
+        for (Object userId : userIds) {
+            Double debt = debts.get(userId);
+            if (debt != null) result.add(new Debt((Long) userId, debt));
+        }
+        return result;
+    }
+
+    private record Debt(Long userId, Double debt) implements UserDebt {
+        @Override
+        public Long getUserId() { return userId; }
+
+        @Override
+        public Double getDebt() { return debt; }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Loan formulas as the controllers call them (LoanService, boxed) and as the batch paths call them (LoanMath).
+//Scenarios rotate over a fixed set of realistic loans, so the annuity cache hits like it does in production.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoanMathBenchmark {
+    private static final int SCENARIOS = 1024; //Power of two, the index wraps with a mask
+
+    private final double[] capital = new double[SCENARIOS];
+    private final int[] term = new int[SCENARIOS];
+    private final double[] interest = new double[SCENARIOS];
+    private final LoanEntity[] loans = new LoanEntity[SCENARIOS];
+    private final LoanService loanService = new LoanService();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SCENARIOS; i++) {
+            capital[i] = 10_000_000 + random.nextInt(190) * 1_000_000; //10 to 200 millions
+            term[i] = 5 + random.nextInt(26); //5 to 30 years
+            interest[i] = (20 + random.nextInt(71)) / 10.0; //2.0% to 9.0% every 0.1
+            LoanEntity loan = new LoanEntity();
+            loan.setCapital(capital[i]);
+            loan.setTerm(term[i]);
+            loan.setInterest(interest[i]);
+            loans[i] = loan;
+        }
+        AnnuityFactorCache.clear();
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (SCENARIOS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Double simulateLoan() {
+        int i = nextIndex();
+        return loanService.simulateLoan(capital[i], term[i], interest[i]);
+    }
+
+    @Benchmark
+    public Double totalPayments() {
+        return loanService.totalPayments(loans[nextIndex()]);
+    }
+
+    @Benchmark
+    public Double monthTotalPayments() {
+        return loanService.monthTotalPayments(loans[nextIndex()]);
+    }
+
+    @Benchmark
+    public double monthPaymentPrimitive() {
+        int i = nextIndex();
+        return LoanMath.monthPayment(capital[i], term[i], interest[i]);
+    }
+
+    @Benchmark
+    public double totalPaymentsPrimitive() {
+        int i = nextIndex();
+        return LoanMath.totalPayments(capital[i], term[i], interest[i]);
+    }
+
+    @Benchmark
+    public double monthTotalPaymentPrimitive() {
+        int i = nextIndex();
+        return LoanMath.monthTotalPayment(capital[i], term[i], interest[i]);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.backend_martin_gamboa.LoadTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+//The calls of the workload against the running app, each one returns the status code.
+//Bodies are read completely, so the ZIP download is timed until its last byte.
+final class ApiClient {
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final String base;
+
+    ApiClient(int port) {
+        this.base = "http://localhost:" + port + "/api";
+    }
+
+    int login(String email, String password) throws IOException, InterruptedException {
+        return postJson("/user/login", "{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}");
+    }
+
+    int createLoan(long userId, int loanType, double capital, int term, double interest, double propCost) throws IOException, InterruptedException {
+        return postJson("/loan/", "{\"userId\":" + userId + ",\"loantype\":" + loanType + ",\"capital\":" + capital
+                + ",\"term\":" + term + ",\"interest\":" + interest + ",\"status\":1,\"propCost\":" + propCost + "}");
+    }
+
+    int loansForEvaluate(long after, int limit) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/loan/loansForEvaluate?after=" + after + "&limit=" + limit)).build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    int uploadDocument(long userId, long loanId, String docName, byte[] content) throws IOException, InterruptedException {
+        String boundary = "loadtest" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 512);
+        writeField(body, boundary, "userId", Long.toString(userId));
+        writeField(body, boundary, "loanId", Long.toString(loanId));
+        writeField(body, boundary, "docName", docName);
+        body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + docName
+                + "\"\r\nContent-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/document/"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    int loanZip(long loanId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/document/loanDocs/" + loanId)).build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private int postJson(String path, String json) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static void writeField(ByteArrayOutputStream body, String boundary, String name, String value) {
+        body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+}
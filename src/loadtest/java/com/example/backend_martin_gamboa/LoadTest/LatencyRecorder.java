@@ -0,0 +1,39 @@
+package com.example.backend_martin_gamboa.LoadTest;
+
+import java.util.Arrays;
+
+//Latencies of one endpoint in nanoseconds, kept whole so the percentiles are exact.
+//Each worker owns its recorders, they are merged once the run is over.
+final class LatencyRecorder {
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errors;
+
+    void record(long nanos, boolean ok) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+        if (!ok) errors++;
+    }
+
+    void merge(LatencyRecorder other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.latencies[i], true);
+        }
+        errors += other.errors;
+    }
+
+    int count() { return count; }
+
+    int errors() { return errors; }
+
+    //Nearest rank percentile in milliseconds, percentile between 0 and 100
+    double percentileMillis(double percentile) {
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(rank - 1, 0)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.backend_martin_gamboa.LoadTest;
+
+import com.example.backend_martin_gamboa.BackendMartinGamboaApplication;
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import com.example.backend_martin_gamboa.Entity.UserEntity;
+import com.example.backend_martin_gamboa.Repository.LoanRepository;
+import com.example.backend_martin_gamboa.Repository.UserRepository;
+import com.example.backend_martin_gamboa.Service.LoanMath;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Boots the app on the H2 test profile, seeds users, loans and documents, and drives a mixed workload
+ * over HTTP from a fixed number of workers (closed loop, each worker waits for its answer).
+ * Prints p50/p99 latency and throughput per endpoint and writes them as CSV, so two builds can be compared.
+ * Everything runs in this process and offline:
+ *     mvn -Ploadtest test-compile exec:exec
+ *     mvn -Ploadtest test-compile exec:exec -Dloadtest.args="threads=32 duration=60 mix=login:50,loanZip:50"
+ */
+public class LoadTestRunner {
+    enum Operation {
+        LOGIN("login"), CREATE_LOAN("createLoan"), EVALUATION_QUEUE("evaluationQueue"),
+        UPLOAD_DOCUMENT("uploadDocument"), LOAN_ZIP("loanZip");
+
+        final String label; //Name in the mix option and in the report
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        static Operation of(String label) {
+            for (Operation operation : values()) {
+                if (operation.label.equals(label)) return operation;
+            }
+            throw new IllegalArgumentException("Operación desconocida en mix: " + label);
+        }
+    }
+
+    private final Map<String, String> options = new HashMap<>();
+    private final int users;
+    private final int loansPerUser;
+    private final int docLoans; //Loans seeded with documents, the ZIP downloads use these
+    private final int docsPerLoan;
+    private final int docSize;
+    private final int threads;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int[] weights = new int[Operation.values().length];
+    private final String report;
+
+    private ApiClient api;
+    private long[] userIds;
+    private long[] loanIds;
+    private int totalWeight;
+
+    LoadTestRunner(String[] args) {
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 1) throw new IllegalArgumentException("Argumento inválido, se esperaba clave=valor: " + arg);
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        users = intOption("users", 500);
+        loansPerUser = intOption("loansPerUser", 4);
+        docLoans = intOption("docLoans", 50);
+        docsPerLoan = intOption("docsPerLoan", 4);
+        docSize = intOption("docSize", 64 * 1024);
+        threads = intOption("threads", 16);
+        warmupSeconds = intOption("warmup", 10);
+        durationSeconds = intOption("duration", 30);
+        report = options.getOrDefault("report",
+                "target/loadtest/report-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv");
+        for (String entry : options.getOrDefault("mix", "login:30,createLoan:15,evaluationQueue:30,uploadDocument:15,loanZip:10").split(",")) {
+            String[] pair = entry.split(":");
+            if (pair.length != 2) throw new IllegalArgumentException("Entrada inválida en mix, se esperaba operación:peso: " + entry);
+            weights[Operation.of(pair[0].trim()).ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        for (int weight : weights) totalWeight += weight;
+        if (users < 1 || loansPerUser < 1 || threads < 1 || durationSeconds < 1 || totalWeight < 1) {
+            throw new IllegalArgumentException("users, loansPerUser, threads, duration y mix deben ser mayores a 0");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTestRunner(args).run();
+    }
+
+    void run() throws Exception {
+        Path storage = Files.createTempDirectory("loadtest-documents");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BackendMartinGamboaApplication.class)
+                .profiles("test")
+                .properties("server.port=0", "document.storage.path=" + storage, "logging.level.root=WARN")
+                .run();
+        try {
+            api = new ApiClient(((WebServerApplicationContext) context).getWebServer().getPort());
+            long seedStart = System.nanoTime();
+            seed(context.getBean(UserRepository.class), context.getBean(LoanRepository.class));
+            System.out.printf(Locale.ROOT, "Seeded %d users, %d loans and %d documents in %.1f s%n",
+                    userIds.length, loanIds.length, Math.min(docLoans, loanIds.length) * docsPerLoan, (System.nanoTime() - seedStart) / 1e9);
+            LatencyRecorder[] results = drive();
+            print(results);
+            write(results);
+        } finally {
+            context.close();
+            deleteTree(storage);
+        }
+    }
+
+    //Users and loans go straight to the repositories, documents through the upload endpoint so they land in the blob store
+    private void seed(UserRepository userRepository, LoanRepository loanRepository) throws IOException, InterruptedException {
+        Random random = new Random(42);
+        List<UserEntity> newUsers = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            UserEntity user = new UserEntity();
+            user.setRut("LT-" + i);
+            user.setName("Cliente " + i);
+            user.setEmail(email(i));
+            user.setPassword(password(i));
+            user.setBirthdate(new Date(System.currentTimeMillis() - (20L + random.nextInt(45)) * 365 * 24 * 3600 * 1000));
+            user.setPhone("9" + (10000000 + i));
+            user.setUsertype(1);
+            newUsers.add(user);
+        }
+        userIds = userRepository.saveAll(newUsers).stream().mapToLong(UserEntity::getId).toArray();
+
+        List<LoanEntity> newLoans = new ArrayList<>(users * loansPerUser);
+        for (long userId : userIds) {
+            for (int j = 0; j < loansPerUser; j++) {
+                LoanEntity loan = new LoanEntity();
+                loan.setUserId(userId);
+                loan.setLoantype(1 + random.nextInt(4));
+                loan.setCapital(10_000_000.0 + random.nextInt(190) * 1_000_000);
+                loan.setTerm(5 + random.nextInt(26));
+                loan.setInterest((20 + random.nextInt(71)) / 10.0);
+                loan.setPropCost(loan.getCapital() / (0.4 + random.nextDouble() * 0.6));
+                loan.setStatus(1 + random.nextInt(8));
+                loan.setMonthFee(loan.getCapital() * LoanMath.ADMIN_FEE_RATE);
+                loan.setMonthQuote(LoanMath.monthTotalPayment(loan.getCapital(), loan.getTerm(), loan.getInterest()));
+                loan.setTotal(LoanMath.totalPayments(loan.getCapital(), loan.getTerm(), loan.getInterest()));
+                newLoans.add(loan);
+            }
+        }
+        loanIds = loanRepository.saveAll(newLoans).stream().mapToLong(LoanEntity::getId).toArray();
+
+        byte[] content = new byte[docSize];
+        for (int i = 0; i < Math.min(docLoans, loanIds.length); i++) {
+            for (int j = 0; j < docsPerLoan; j++) {
+                random.nextBytes(content);
+                int status = api.uploadDocument(newLoans.get(i).getUserId(), loanIds[i], "documento_" + j + ".pdf", content);
+                if (status != 200) throw new IllegalStateException("No se pudo cargar el documento de prueba, estado " + status);
+            }
+        }
+    }
+
+    private LatencyRecorder[] drive() throws Exception {
+        long start = System.nanoTime();
+        long measureFrom = start + warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + durationSeconds * 1_000_000_000L;
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<LatencyRecorder[]>> pending = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = 1000 + t;
+            pending.add(workers.submit(() -> work(new Random(seed), measureFrom, end)));
+        }
+        LatencyRecorder[] results = newRecorders();
+        try {
+            for (Future<LatencyRecorder[]> worker : pending) {
+                LatencyRecorder[] partial = worker.get();
+                for (int i = 0; i < results.length; i++) results[i].merge(partial[i]);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return results;
+    }
+
+    private LatencyRecorder[] work(Random random, long measureFrom, long end) {
+        LatencyRecorder[] recorders = newRecorders();
+        byte[] content = new byte[docSize];
+        Operation[] operations = Operation.values();
+        while (System.nanoTime() < end) {
+            Operation operation = pick(operations, random.nextInt(totalWeight));
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                ok = execute(operation, random, content) / 100 == 2;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (start >= measureFrom) recorders[operation.ordinal()].record(elapsed, ok);
+        }
+        return recorders;
+    }
+
+    private int execute(Operation operation, Random random, byte[] content) throws IOException, InterruptedException {
+        switch (operation) {
+            case LOGIN: {
+                int user = random.nextInt(users);
+                return api.login(email(user), password(user));
+            }
+            case CREATE_LOAN: {
+                double capital = 10_000_000.0 + random.nextInt(190) * 1_000_000;
+                return api.createLoan(userIds[random.nextInt(userIds.length)], 1 + random.nextInt(4), capital,
+                        5 + random.nextInt(26), (20 + random.nextInt(71)) / 10.0, capital * 1.5);
+            }
+            case EVALUATION_QUEUE:
+                return api.loansForEvaluate(loanIds[random.nextInt(loanIds.length)], 50);
+            case UPLOAD_DOCUMENT: {
+                //New documents go to loans outside the ZIP set, so the downloads keep the same size during the run
+                int loan = Math.min(docLoans, loanIds.length - 1) + random.nextInt(Math.max(1, loanIds.length - docLoans));
+                random.nextBytes(content);
+                return api.uploadDocument(userIds[loan / loansPerUser], loanIds[loan], "carga_" + random.nextInt(1_000_000) + ".pdf", content);
+            }
+            case LOAN_ZIP:
+                return api.loanZip(loanIds[random.nextInt(Math.max(1, Math.min(docLoans, loanIds.length)))]);
+            default:
+                throw new IllegalStateException(operation.label);
+        }
+    }
+
+    private Operation pick(Operation[] operations, int ticket) {
+        for (Operation operation : operations) {
+            ticket -= weights[operation.ordinal()];
+            if (ticket < 0) return operation;
+        }
+        return operations[operations.length - 1];
+    }
+
+    private void print(LatencyRecorder[] results) {
+        System.out.printf(Locale.ROOT, "%n%d workers, %d s measured after %d s of warmup%n", threads, durationSeconds, warmupSeconds);
+        System.out.printf(Locale.ROOT, "%-16s %9s %7s %10s %10s %10s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms");
+        for (Operation operation : Operation.values()) {
+            LatencyRecorder recorder = results[operation.ordinal()];
+            if (recorder.count() == 0) continue;
+            System.out.printf(Locale.ROOT, "%-16s %9d %7d %10.1f %10.2f %10.2f%n", operation.label, recorder.count(), recorder.errors(),
+                    (double) recorder.count() / durationSeconds, recorder.percentileMillis(50), recorder.percentileMillis(99));
+        }
+    }
+
+    private void write(LatencyRecorder[] results) throws IOException {
+        Path file = Paths.get(report).toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("endpoint,requests,errors,throughput,p50_ms,p99_ms");
+            for (Operation operation : Operation.values()) {
+                LatencyRecorder recorder = results[operation.ordinal()];
+                out.printf(Locale.ROOT, "%s,%d,%d,%.1f,%.3f,%.3f%n", operation.label, recorder.count(), recorder.errors(),
+                        (double) recorder.count() / durationSeconds, recorder.percentileMillis(50), recorder.percentileMillis(99));
+            }
+        }
+        System.out.println("Report written to " + file);
+    }
+
+    private static LatencyRecorder[] newRecorders() {
+        LatencyRecorder[] recorders = new LatencyRecorder[Operation.values().length];
+        for (int i = 0; i < recorders.length; i++) recorders[i] = new LatencyRecorder();
+        return recorders;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static String email(int user) {
+        return "cliente" + user + "@loadtest.cl";
+    }
+
+    private static String password(int user) {
+        return "clave" + user;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
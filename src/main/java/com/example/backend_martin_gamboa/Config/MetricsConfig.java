@@ -0,0 +1,24 @@
+package com.example.backend_martin_gamboa.Config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Metrics published at /actuator/prometheus. The services are annotated with
+ * {@code @Timed(SERVICE_TIMER)}, so every public method gets a timer tagged with its
+ * class and method. The controllers are timed by Spring MVC as http.server.requests,
+ * one series per endpoint.
+ */
+@Configuration
+public class MetricsConfig {
+    public static final String SERVICE_TIMER = "service.method";
+    public static final String DOCUMENT_BYTES = "document.bytes"; //tagged direction=uploaded|downloaded
+
+    //Makes @Timed work on any bean, not only on the web endpoints
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.backend_martin_gamboa.Config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Background jobs of the running app (expiry of stale upload sessions). Left out of the datagen
+ * profile, its scheduler thread would keep the JVM alive once the data load is done.
+ */
+@Configuration
+@EnableScheduling
+@Profile("!datagen")
+public class SchedulingConfig {
+}
@@ -1,20 +1,25 @@
 package com.example.backend_martin_gamboa.Controller;
 
 import com.example.backend_martin_gamboa.Entity.DocumentEntity;
+import com.example.backend_martin_gamboa.Entity.UploadSessionEntity;
+import com.example.backend_martin_gamboa.Repository.DocumentMeta;
+import com.example.backend_martin_gamboa.Repository.DocumentStorageStats;
+import com.example.backend_martin_gamboa.Service.DocumentExportService;
 import com.example.backend_martin_gamboa.Service.DocumentService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 @RestController
 @RequestMapping("/api/document")
@@ -22,6 +27,8 @@ import java.util.zip.ZipOutputStream;
 public class DocumentController {
     @Autowired
     DocumentService documentService;
+    @Autowired
+    DocumentExportService documentExportService;
     @PostMapping("/")
     public ResponseEntity<DocumentEntity> addDocument(@RequestParam("file") MultipartFile file,
                                                       @RequestParam("userId") Long userId,
@@ -31,53 +38,178 @@ public class DocumentController {
         return ResponseEntity.ok(doc);
     }
 
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadSessionEntity> createUpload(@RequestParam("userId") Long userId,
+                                                            @RequestParam("loanId") Long loanId,
+                                                            @RequestParam("docName") String docName,
+                                                            @RequestParam(value = "mediaType", required = false) String mediaType) {
+        UploadSessionEntity session = documentService.createUploadSession(userId, loanId, docName, mediaType);
+        return ResponseEntity.ok(session);
+    }
+
+    @GetMapping("/uploads/{sessionId}")
+    public ResponseEntity<UploadSessionEntity> getUpload(@PathVariable("sessionId") String sessionId) {
+        UploadSessionEntity session = documentService.getUploadSession(sessionId);
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(session); // nextChunk tells the client where to resume
+    }
+
+    @PutMapping(value = "/uploads/{sessionId}/chunks/{chunkNumber}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionEntity> uploadChunk(@PathVariable("sessionId") String sessionId,
+                                                           @PathVariable("chunkNumber") Integer chunkNumber,
+                                                           HttpServletRequest request) throws IOException {
+        UploadSessionEntity session;
+        try {
+            // The raw body is appended to the staging file as it is read
+            session = documentService.appendChunk(sessionId, chunkNumber, request.getInputStream());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(documentService.getUploadSession(sessionId));
+        }
+        if (session == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(session);
+    }
+
+    @PostMapping("/uploads/{sessionId}/commit")
+    public ResponseEntity<DocumentEntity> commitUpload(@PathVariable("sessionId") String sessionId) throws IOException {
+        DocumentEntity doc = documentService.commitUploadSession(sessionId);
+        if (doc == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(doc);
+    }
+
+    @DeleteMapping("/uploads/{sessionId}")
+    public ResponseEntity<Boolean> cancelUpload(@PathVariable("sessionId") String sessionId) throws IOException {
+        documentService.deleteUploadSession(sessionId);
+        return ResponseEntity.ok(true);
+    }
+
     @GetMapping("/{userId}/{docName}")
-    public ResponseEntity<byte[]> consultDoc(@PathVariable("userId") Long userId, @PathVariable("docName") String docName) {
+    public ResponseEntity<StreamingResponseBody> consultDoc(@PathVariable("userId") Long userId,
+                                                            @PathVariable("docName") String docName,
+                                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                                            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
         DocumentEntity doc = documentService.consultDocument(userId, docName);
         if (doc == null) {
             return ResponseEntity.notFound().build(); // If don't find the document, return a 404 error
         }
+        if (doc.getStorageKey() == null) {
+            return ResponseEntity.notFound().build(); // Saved before the blob store and not migrated yet
+        }
 
-        return ResponseEntity.ok()
+        // The content never changes for a stored document, so its hash is a strong ETag
+        String eTag = "\"" + doc.getContentHash() + "\"";
+        if (ifNoneMatch != null && eTagMatches(ifNoneMatch, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        long length = doc.getContentSize();
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        // A Range is only honored when the client copy is still the current one (If-Range)
+        if (range != null && length > 0 && (ifRange == null || ifRange.equals(eTag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Only single ranges are served as partial content, multiple ranges get the whole document
+            if (ranges.size() == 1) {
+                HttpRange requested = ranges.get(0);
+                start = requested.getRangeStart(length);
+                end = requested.getRangeEnd(length);
+                if (start >= length || start > end) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                            .build();
+                }
+                partial = true;
+            }
+        }
+
+        long position = start;
+        long count = end - start + 1;
+        StreamingResponseBody body = out -> documentService.transferDocument(doc, position, count, out);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK);
+        if (partial) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        if (doc.getUploadDate() != null) {
+            response.lastModified(doc.getUploadDate().toInstant());
+        }
+        return response
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + doc.getDocName() + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(doc.getContent()); // Return the content in byte[]
+                .contentLength(count)
+                .body(body); // Stream the requested bytes from the blob store
+
+    }
+
+    @GetMapping("/user/{userId}/meta")
+    public ResponseEntity<List<DocumentMeta>> userDocsMeta(@PathVariable("userId") Long userId) {
+        List<DocumentMeta> docs = documentService.consultUserDocuments(userId);
+        return ResponseEntity.ok(docs);
+    }
+
+    @GetMapping("/loan/{loanId}/meta")
+    public ResponseEntity<List<DocumentMeta>> loanDocsMeta(@PathVariable("loanId") Long loanId,
+                                                           @RequestParam(value = "page", defaultValue = "0") int page,
+                                                           @RequestParam(value = "size", defaultValue = "50") int size) {
+        if (page < 0 || size < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<DocumentMeta> docs = documentService.consultLoanDocumentsMeta(loanId, page, size);
+        return ResponseEntity.ok(docs);
+    }
 
+    @GetMapping("/storageStats")
+    public ResponseEntity<DocumentStorageStats> storageStats() {
+        return ResponseEntity.ok(documentService.consultStorageStats());
     }
 
     @GetMapping("/loanDocs/{loanId}")
-    public ResponseEntity<byte[]> loanDocs(@PathVariable("loanId") Long loanId) {
-        List<DocumentEntity> docs = documentService.consultLoanDocuments(loanId);
+    public ResponseEntity<StreamingResponseBody> loanDocs(@PathVariable("loanId") Long loanId) {
+        List<DocumentEntity> docs = stored(documentService.consultLoanDocuments(loanId));
 
         if (docs.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
 
-        // Create a ZIP in memory
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ZipOutputStream zipOut = new ZipOutputStream(baos)) {
-
-            for (DocumentEntity doc : docs) {
-                // Create an enter in the ZIP for all documents
-                ZipEntry zipEntry = new ZipEntry(doc.getDocName());
-                zipOut.putNextEntry(zipEntry);
-                zipOut.write(doc.getContent()); // Agregar el contenido del archivo al zip
-                zipOut.closeEntry();
-            }
+        // The ZIP is written straight to the response, one document at a time
+        StreamingResponseBody body = out -> documentExportService.streamZip(docs, out);
 
-            zipOut.finish(); // Finish the ZIP
+        // Preparing the response ZIP
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"loanDocuments_" + loanId + ".zip\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
 
-            // Preparing the response ZIP
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"loanDocuments_" + loanId + ".zip\"")
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(baos.toByteArray());
+    @GetMapping("/loansDocs")
+    public ResponseEntity<StreamingResponseBody> loansDocs(@RequestParam("loanIds") List<Long> loanIds) {
+        List<DocumentEntity> docs = stored(documentService.consultLoansDocuments(loanIds));
 
-        } catch (IOException e) {
-            // Exception in case of error
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(null);
+        if (docs.isEmpty()) {
+            return ResponseEntity.notFound().build();
         }
+
+        // One ZIP for the whole batch, with a loan_{id} folder per loan and the next documents read ahead
+        StreamingResponseBody body = out -> documentExportService.writeZip(docs, true, out);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"loansDocuments.zip\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
     }
 
     @DeleteMapping("/deleteLoanDocs/{loanId}")
@@ -86,4 +218,27 @@ public class DocumentController {
         return ResponseEntity.ok(deleted);
     }
 
+    @DeleteMapping("/deleteLoanDocs")
+    public ResponseEntity<Integer> deleteLoansDocs(@RequestParam("loanIds") List<Long> loanIds) {
+        int deleted = documentService.deleteLoansDocuments(loanIds);
+        return ResponseEntity.ok(deleted);
+    }
+
+    private static boolean eTagMatches(String ifNoneMatch, String eTag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Documents saved before the blob store and not migrated yet have no content to put in a ZIP
+    private static List<DocumentEntity> stored(List<DocumentEntity> docs) {
+        return docs.stream().filter(doc -> doc.getStorageKey() != null).toList();
+    }
 }
@@ -0,0 +1,50 @@
+package com.example.backend_martin_gamboa.Controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+//Writes the rows handed by the source as one JSON array, each one as soon as it is read.
+//Keeps the old unpaged answers of the list endpoints without holding the whole table in memory
+final class JsonArrayBody {
+    private JsonArrayBody() {
+    }
+
+    static <T> ResponseEntity<StreamingResponseBody> response(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(of(objectMapper, source));
+    }
+
+    static <T> StreamingResponseBody of(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        ObjectWriter writer = objectMapper.writer();
+        return out -> {
+            OutputStream buffered = new BufferedOutputStream(out);
+            boolean[] first = {true};
+            buffered.write('[');
+            try {
+                source.accept(row -> {
+                    try {
+                        if (!first[0]) {
+                            buffered.write(',');
+                        }
+                        first[0] = false;
+                        buffered.write(writer.writeValueAsBytes(row));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            buffered.write(']');
+            buffered.flush();
+        };
+    }
+}
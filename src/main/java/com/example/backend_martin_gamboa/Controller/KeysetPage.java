@@ -0,0 +1,23 @@
+package com.example.backend_martin_gamboa.Controller;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.function.Function;
+
+//Responses of the endpoints paged by id: while a page comes full, the X-Next-Cursor header carries the value for "after"
+final class KeysetPage {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private KeysetPage() {
+    }
+
+    static <T> ResponseEntity<List<T>> response(List<T> items, int limit, Function<T, Long> id) {
+        if (items.isEmpty() || items.size() < limit) {
+            return ResponseEntity.ok(items);
+        }
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, String.valueOf(id.apply(items.get(items.size() - 1))))
+                .body(items);
+    }
+}
@@ -1,30 +1,90 @@
 package com.example.backend_martin_gamboa.Controller;
 
+import com.example.backend_martin_gamboa.Dto.LoanEvaluation;
+import com.example.backend_martin_gamboa.Dto.LoanEvaluationRequest;
+import com.example.backend_martin_gamboa.Dto.LoanScoringStatus;
 import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import com.example.backend_martin_gamboa.Entity.LoanScoreEntity;
+import com.example.backend_martin_gamboa.Service.AmortizationSchedule;
+import com.example.backend_martin_gamboa.Service.LoanEvaluationService;
+import com.example.backend_martin_gamboa.Service.LoanScoringService;
 import com.example.backend_martin_gamboa.Service.LoanService;
+import com.example.backend_martin_gamboa.Service.LoanSimulationBatch;
+import com.example.backend_martin_gamboa.Service.SensitivityGrid;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/loan")
-@CrossOrigin("*")
+@CrossOrigin(origins = "*", exposedHeaders = KeysetPage.NEXT_CURSOR_HEADER)
 public class LoanController {
     @Autowired
     LoanService loanService;
+    @Autowired
+    LoanEvaluationService loanEvaluationService;
+    @Autowired
+    LoanScoringService loanScoringService;
+    @Autowired
+    ObjectMapper objectMapper;
 
+    // Pages by id: the X-Next-Cursor header carries the value for "after" while there are more loans
     @GetMapping("/")
-    public ResponseEntity<List<LoanEntity>> listLoans() {
-        List<LoanEntity> loans = loanService.getAllLoans();
-        return ResponseEntity.ok(loans);
+    public ResponseEntity<List<LoanEntity>> listLoans(@RequestParam(required = false) Long after,
+                                                      @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        limit = Math.min(limit, LoanService.MAX_PAGE_SIZE);
+        List<LoanEntity> loans = loanService.getLoans(after, limit);
+        return KeysetPage.response(loans, limit, LoanEntity::getId);
     }
 
+    // Without after and limit every loan comes in one JSON array, as before the paging, written while the rows are read
+    @GetMapping(value = "/", params = {"!after", "!limit"})
+    public ResponseEntity<StreamingResponseBody> listAllLoans() {
+        return JsonArrayBody.response(objectMapper, loanService::forEachLoan);
+    }
+
+    // Every loan as newline delimited JSON, written while the rows are read
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamLoans() {
+        StreamingResponseBody body = NdjsonBody.of(objectMapper, loanService::forEachLoan);
+        return ResponseEntity.ok().contentType(NdjsonBody.MEDIA_TYPE).body(body);
+    }
+
+    // Same contract as listLoans over the loans that can still be evaluated.
+    // sort is the id direction (asc or desc): pages are cut by id, so it is the only order that keeps them stable
     @GetMapping("/loansForEvaluate")
-    public ResponseEntity<List<LoanEntity>> listLoansForEvaluate() {
-        List<LoanEntity> loans = loanService.getLoansForEvaluate();
-        return ResponseEntity.ok(loans);
+    public ResponseEntity<List<LoanEntity>> listLoansForEvaluate(@RequestParam(required = false) Long after,
+                                                                 @RequestParam(defaultValue = "100") int limit,
+                                                                 @RequestParam(defaultValue = "asc") String sort) {
+        if (limit < 1 || !isSortDirection(sort)) {
+            return ResponseEntity.badRequest().build();
+        }
+        limit = Math.min(limit, LoanService.MAX_PAGE_SIZE);
+        List<LoanEntity> loans = loanService.getLoansForEvaluate(after, limit, sort.equals("desc"));
+        return KeysetPage.response(loans, limit, LoanEntity::getId);
+    }
+
+    @GetMapping(value = "/loansForEvaluate", params = {"!after", "!limit"})
+    public ResponseEntity<StreamingResponseBody> listAllLoansForEvaluate(@RequestParam(defaultValue = "asc") String sort) {
+        if (!isSortDirection(sort)) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean descending = sort.equals("desc");
+        return JsonArrayBody.<LoanEntity>response(objectMapper, action -> loanService.forEachLoanForEvaluate(descending, action));
+    }
+
+    private static boolean isSortDirection(String sort) {
+        return sort.equals("asc") || sort.equals("desc");
     }
 
     @GetMapping("/userLoans/{userId}")
@@ -60,8 +120,6 @@ public class LoanController {
     @PostMapping("/")
     public ResponseEntity<LoanEntity> createLoan(@RequestBody LoanEntity loan) {
         LoanEntity newLoan = loanService.createLoan(loan);
-        loanService.updateMonthQuote(newLoan);
-        loanService.updateTotal(newLoan);
         return ResponseEntity.ok(newLoan);
     }
 
@@ -89,6 +147,125 @@ public class LoanController {
         return ResponseEntity.ok(result);
     }
 
+    // Body: [[capital, term, interest], ...], answers the monthly payments in the same order
+    @PostMapping(value = "/simulate/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<double[]> simulateLoans(@RequestBody double[][] simulations){
+        return simulateLoans(() -> LoanSimulationBatch.fromRows(simulations));
+    }
+
+    // Body: one "capital,term,interest" line per simulation
+    @PostMapping(value = "/simulate/batch", consumes = "text/csv")
+    public ResponseEntity<double[]> simulateLoansCsv(@RequestBody String simulations){
+        return simulateLoans(() -> LoanSimulationBatch.fromCsv(simulations));
+    }
+
+    private ResponseEntity<double[]> simulateLoans(Supplier<LoanSimulationBatch> parser){
+        LoanSimulationBatch batch;
+        try {
+            batch = parser.get();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(loanService.simulateLoans(batch));
+    }
+
+    @GetMapping("/simulate/{capital}/grid")
+    public ResponseEntity<SensitivityGrid> simulateGrid(@PathVariable("capital") Double capital,
+                                                        @RequestParam(defaultValue = "1.0") Double rateFrom,
+                                                        @RequestParam(defaultValue = "0.1") Double rateStep,
+                                                        @RequestParam(defaultValue = "100") Integer rateCount,
+                                                        @RequestParam(defaultValue = "1") Integer termFrom,
+                                                        @RequestParam(defaultValue = "30") Integer termTo){
+        try {
+            return ResponseEntity.ok(loanService.simulateGrid(capital, rateFrom, rateStep, rateCount, termFrom, termTo));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/{id}/schedule")
+    public ResponseEntity<StreamingResponseBody> loanSchedule(@PathVariable("id") Long id,
+                                                              @RequestParam(defaultValue = AmortizationSchedule.FORMAT_NDJSON) String format){
+        if (!AmortizationSchedule.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        AmortizationSchedule schedule;
+        try {
+            schedule = loanService.amortizationSchedule(id);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build(); // Stored term outside the allowed range
+        }
+        if (schedule == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return scheduleResponse(schedule, format);
+    }
+
+    @GetMapping("/simulate/{capital}/{term}/{interest}/schedule")
+    public ResponseEntity<StreamingResponseBody> simulateSchedule(@PathVariable("capital") Double capital,
+                                                                  @PathVariable("term") Integer term,
+                                                                  @PathVariable("interest") Double interest,
+                                                                  @RequestParam(defaultValue = AmortizationSchedule.FORMAT_NDJSON) String format){
+        if (!AmortizationSchedule.isSupportedFormat(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return scheduleResponse(loanService.simulateSchedule(capital, term, interest), format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // The rows are written straight to the response, one line per month
+    private ResponseEntity<StreamingResponseBody> scheduleResponse(AmortizationSchedule schedule, String format){
+        MediaType mediaType = AmortizationSchedule.FORMAT_CSV.equals(format)
+                ? new MediaType("text", "csv")
+                : NdjsonBody.MEDIA_TYPE;
+        StreamingResponseBody body = out -> schedule.writeTo(out, format);
+        return ResponseEntity.ok().contentType(mediaType).body(body);
+    }
+
+    // Every evaluation rule of the loan in one call, instead of incomeQuota, debtIncome, savingCapacity, maxCapital, statusInt and ageLimit
+    @PostMapping("/{id}/evaluate")
+    public ResponseEntity<LoanEvaluation> evaluateLoan(@PathVariable("id") Long id, @RequestBody LoanEvaluationRequest request){
+        if (request.getIncome() == null || request.getIncome() <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        LoanEvaluation evaluation = loanEvaluationService.evaluate(id, request);
+        if (evaluation == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(evaluation);
+    }
+
+    // Scores the whole evaluation queue in the background, follow it with /score/status
+    @PostMapping("/score")
+    public ResponseEntity<LoanScoringStatus> startScoring(){
+        LoanScoringStatus started = loanScoringService.startJob();
+        if (started == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(loanScoringService.getStatus());
+        }
+        return ResponseEntity.accepted().body(started);
+    }
+
+    @GetMapping("/score/status")
+    public ResponseEntity<LoanScoringStatus> scoringStatus(){
+        LoanScoringStatus status = loanScoringService.getStatus();
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    @GetMapping("/{id}/score")
+    public ResponseEntity<LoanScoreEntity> loanScore(@PathVariable("id") Long id){
+        LoanScoreEntity score = loanScoringService.getScore(id);
+        if (score == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(score);
+    }
+
     @PostMapping("/incomeQuota/{income}/{id}")
     public ResponseEntity<Boolean> incomeQuota(@PathVariable("income") Double income, @PathVariable("id") Long id){
         Boolean incomeQuota = loanService.incomeQuota(id, income);
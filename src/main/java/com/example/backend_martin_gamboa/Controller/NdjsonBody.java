@@ -0,0 +1,40 @@
+package com.example.backend_martin_gamboa.Controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+//Writes the rows handed by the source as newline delimited JSON, each one as soon as it is read
+final class NdjsonBody {
+    static final MediaType MEDIA_TYPE = new MediaType("application", "x-ndjson");
+
+    private NdjsonBody() {
+    }
+
+    static <T> StreamingResponseBody of(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        ObjectWriter writer = objectMapper.writer();
+        return out -> {
+            OutputStream buffered = new BufferedOutputStream(out);
+            try {
+                source.accept(row -> {
+                    try {
+                        buffered.write(writer.writeValueAsBytes(row));
+                        buffered.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            buffered.flush();
+        };
+    }
+}
@@ -3,22 +3,45 @@ package com.example.backend_martin_gamboa.Controller;
 
 import com.example.backend_martin_gamboa.Entity.UserEntity;
 import com.example.backend_martin_gamboa.Service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/user")
-@CrossOrigin("*")
+@CrossOrigin(origins = "*", exposedHeaders = KeysetPage.NEXT_CURSOR_HEADER)
 public class UserController {
     @Autowired
     UserService userService;
+    @Autowired
+    ObjectMapper objectMapper;
+    //Pages by id: the X-Next-Cursor header carries the value for "after" while there are more users
     @GetMapping("/")
-    public ResponseEntity<List<UserEntity>> listUsers(){ //ResponseEntity, what it is?
-        List<UserEntity> users = userService.getAllUsers();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<UserEntity>> listUsers(@RequestParam(required = false) Long after,
+                                                      @RequestParam(defaultValue = "100") int limit){
+        if (limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        limit = Math.min(limit, UserService.MAX_PAGE_SIZE);
+        List<UserEntity> users = userService.getUsers(after, limit);
+        return KeysetPage.response(users, limit, UserEntity::getId);
+    }
+
+    //Without after and limit every user comes in one JSON array, as before the paging, written while the rows are read
+    @GetMapping(value = "/", params = {"!after", "!limit"})
+    public ResponseEntity<StreamingResponseBody> listAllUsers(){
+        return JsonArrayBody.response(objectMapper, userService::forEachUser);
+    }
+
+    //Every user as newline delimited JSON, written while the rows are read
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamUsers(){
+        StreamingResponseBody body = NdjsonBody.of(objectMapper, userService::forEachUser);
+        return ResponseEntity.ok().contentType(NdjsonBody.MEDIA_TYPE).body(body);
     }
 
     @GetMapping("/{id}")
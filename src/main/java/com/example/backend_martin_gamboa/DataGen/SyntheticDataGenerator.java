@@ -0,0 +1,251 @@
+package com.example.backend_martin_gamboa.DataGen;
+
+import com.example.backend_martin_gamboa.Service.LoanMath;
+import com.example.backend_martin_gamboa.Storage.BlobStore;
+import com.example.backend_martin_gamboa.Storage.StoredBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Bulk loads synthetic users, loans and documents to reproduce production volumes, only with the datagen profile.
+ * Rows go in with JDBC batches, one transaction per batch, and the same seed always gives the same data.
+ * Documents point to a small pool of real blobs, so downloads and ZIPs work without storing every document.
+ * The application context is closed once the data is in, so the run ends on its own.
+ * See application-datagen.properties for the sizes and distributions.
+ */
+@Component
+@Profile("datagen")
+public class SyntheticDataGenerator implements CommandLineRunner {
+    private static final Logger log = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+
+    private static final String INSERT_USER = "insert into user_pb (rut, name, password, birthdate, email, phone, address, usertype) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_LOAN = "insert into loan (user_id, loantype, capital, month_fee, interest, term, status, "
+            + "prop_cost, total, month_quote) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_DOCUMENT = "insert into document (doc_name, user_id, loan_id, content_size, content_hash, "
+            + "storage_key, media_type, upload_date, stored_size, compressed, store_cpu_nanos) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    BlobStore blobStore;
+    @Autowired
+    ConfigurableApplicationContext context;
+
+    @Value("${datagen.users:100000}")
+    int users;
+    @Value("${datagen.loans:1000000}")
+    int loans;
+    @Value("${datagen.documents:1000000}")
+    int documents;
+    @Value("${datagen.batch-size:5000}")
+    int batchSize;
+    @Value("${datagen.seed:42}")
+    long seed;
+    @Value("${datagen.blob-pool:32}")
+    int blobPool; //distinct contents shared by all the documents
+    @Value("${datagen.loan-types:1:40,2:25,3:20,4:15}")
+    String loanTypes;
+    @Value("${datagen.statuses:1:15,2:5,3:10,4:10,5:10,6:10,7:25,8:15}")
+    String statuses;
+    @Value("${datagen.terms:5:10,10:15,15:20,20:25,25:15,30:15}")
+    String terms;
+    @Value("${datagen.document-sizes:65536:30,262144:40,1048576:25,5242880:5}")
+    String documentSizes;
+    @Value("${datagen.capital-min:10000000}")
+    long capitalMin;
+    @Value("${datagen.capital-max:300000000}")
+    long capitalMax;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Override
+    public void run(String... args) throws Exception {
+        if (users < 1 || loans < 0 || documents < 0 || batchSize < 1 || blobPool < 1 || capitalMax < capitalMin) {
+            throw new IllegalArgumentException("Configuración de datagen inválida");
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        SplittableRandom random = new SplittableRandom(seed);
+        //Emails and ruts of another run must not collide with these
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        long start = System.nanoTime();
+
+        //Ids of the new rows are read back as primitive columns, no entities are built
+        long firstUser = maxId("user_pb");
+        insertUsers(random, run);
+        LongStream.Builder userIdColumn = LongStream.builder();
+        jdbcTemplate.query("select id from user_pb where id > ? order by id", rs -> {
+            userIdColumn.add(rs.getLong(1));
+        }, firstUser);
+        long[] userIds = userIdColumn.build().toArray();
+        log.info("{} usuarios generados en {} s", userIds.length, seconds(start));
+
+        long loansStart = System.nanoTime();
+        long firstLoan = maxId("loan");
+        insertLoans(random, userIds);
+        LongStream.Builder loanIdColumn = LongStream.builder();
+        LongStream.Builder loanUserColumn = LongStream.builder();
+        jdbcTemplate.query("select id, user_id from loan where id > ? order by id", rs -> {
+            loanIdColumn.add(rs.getLong(1));
+            loanUserColumn.add(rs.getLong(2));
+        }, firstLoan);
+        long[] loanIds = loanIdColumn.build().toArray();
+        long[] loanUsers = loanUserColumn.build().toArray();
+        log.info("{} préstamos generados en {} s", loanIds.length, seconds(loansStart));
+
+        if (documents > 0 && loanIds.length > 0) {
+            long documentsStart = System.nanoTime();
+            StoredBlob[] blobs = storeBlobs(random);
+            long[] references = insertDocuments(random, loanIds, loanUsers, blobs);
+            retainBlobs(blobs, references);
+            log.info("{} documentos generados en {} s", documents, seconds(documentsStart));
+        }
+        log.info("Datos generados en {} s", seconds(start));
+        SpringApplication.exit(context, () -> 0);
+    }
+
+    private void insertUsers(SplittableRandom random, String run) {
+        long now = System.currentTimeMillis();
+        insertInBatches(INSERT_USER, users, (ps, i) -> {
+            ps.setString(1, run + "-" + i);
+            ps.setString(2, "Cliente " + i);
+            ps.setString(3, "clave" + i);
+            ps.setDate(4, new Date(now - (18 * 365 + random.nextInt(57 * 365)) * DAY_MILLIS)); //18 to 75 years old
+            ps.setString(5, "cliente" + i + "." + run + "@datagen.cl");
+            ps.setString(6, "9" + (10000000 + random.nextInt(90000000)));
+            ps.setString(7, "Calle " + (1 + random.nextInt(9999)));
+            ps.setInt(8, random.nextInt(100) == 0 ? 2 : 1); //1 executive every 100 users
+        });
+    }
+
+    private void insertLoans(SplittableRandom random, long[] userIds) {
+        WeightedChoice types = WeightedChoice.parse(loanTypes);
+        WeightedChoice status = WeightedChoice.parse(statuses);
+        WeightedChoice term = WeightedChoice.parse(terms);
+        long capitalSteps = (capitalMax - capitalMin) / 1_000_000 + 1;
+        insertInBatches(INSERT_LOAN, loans, (ps, i) -> {
+            double capital = capitalMin + random.nextLong(capitalSteps) * 1_000_000.0;
+            int years = (int) term.next(random);
+            double interest = (20 + random.nextInt(71)) / 10.0; //2.0% to 9.0%
+            ps.setLong(1, userIds[random.nextInt(userIds.length)]);
+            ps.setInt(2, (int) types.next(random));
+            ps.setDouble(3, capital);
+            ps.setDouble(4, capital * LoanMath.ADMIN_FEE_RATE);
+            ps.setDouble(5, interest);
+            ps.setInt(6, years);
+            ps.setInt(7, (int) status.next(random));
+            ps.setDouble(8, capital / (0.4 + random.nextDouble() * 0.6)); //financing between 40% and 100%
+            ps.setDouble(9, LoanMath.totalPayments(capital, years, interest));
+            ps.setDouble(10, LoanMath.monthTotalPayment(capital, years, interest));
+        });
+    }
+
+    //The sizes of the pool follow the document size distribution
+    private StoredBlob[] storeBlobs(SplittableRandom random) throws IOException {
+        WeightedChoice sizes = WeightedChoice.parse(documentSizes);
+        StoredBlob[] blobs = new StoredBlob[blobPool];
+        for (int b = 0; b < blobPool; b++) {
+            byte[] content = new byte[(int) sizes.next(random)];
+            for (int i = 0; i < content.length; i += 8) {
+                long bits = random.nextLong();
+                for (int j = i; j < Math.min(i + 8, content.length); j++, bits >>>= 8) content[j] = (byte) bits;
+            }
+            blobs[b] = blobStore.put(new ByteArrayInputStream(content), false);
+        }
+        return blobs;
+    }
+
+    private long[] insertDocuments(SplittableRandom random, long[] loanIds, long[] loanUsers, StoredBlob[] blobs) {
+        long[] references = new long[blobs.length];
+        long now = System.currentTimeMillis();
+        insertInBatches(INSERT_DOCUMENT, documents, (ps, i) -> {
+            int loan = random.nextInt(loanIds.length);
+            int b = random.nextInt(blobs.length);
+            StoredBlob blob = blobs[b];
+            references[b]++;
+            ps.setString(1, "documento_" + i + ".pdf");
+            ps.setLong(2, loanUsers[loan]);
+            ps.setLong(3, loanIds[loan]);
+            ps.setLong(4, blob.getSize());
+            ps.setString(5, blob.getSha256());
+            ps.setString(6, blob.getKey());
+            ps.setString(7, "application/pdf");
+            ps.setTimestamp(8, new Timestamp(now - random.nextLong(3 * 365 * DAY_MILLIS)));
+            ps.setLong(9, blob.getStoredSize());
+            ps.setBoolean(10, blob.getCompressed());
+            ps.setLong(11, 0L);
+        });
+        return references;
+    }
+
+    //Adds the new documents to the reference count of each blob, so deleting them frees the content as usual
+    private void retainBlobs(StoredBlob[] blobs, long[] references) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int b = 0; b < blobs.length; b++) {
+                if (references[b] == 0) continue;
+                int updated = jdbcTemplate.update("update document_blob set ref_count = ref_count + ? where storage_key = ?",
+                        references[b], blobs[b].getKey());
+                if (updated == 0) {
+                    jdbcTemplate.update("insert into document_blob (storage_key, ref_count, content_size) values (?, ?, ?)",
+                            blobs[b].getKey(), references[b], blobs[b].getSize());
+                }
+            }
+        });
+    }
+
+    private void insertInBatches(String sql, int rows, RowWriter writer) {
+        for (int from = 0; from < rows; from += batchSize) {
+            int base = from;
+            int size = Math.min(batchSize, rows - from);
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    writer.write(ps, base + i);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return size;
+                }
+            }));
+        }
+    }
+
+    private long maxId(String table) {
+        Long max = jdbcTemplate.queryForObject("select max(id) from " + table, Long.class);
+        return max == null ? 0L : max;
+    }
+
+    private static String seconds(long start) {
+        return String.format("%.1f", (System.nanoTime() - start) / 1e9);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(PreparedStatement ps, int row) throws SQLException;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.backend_martin_gamboa.DataGen;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+//Values drawn with the given weights, written as "value:weight,value:weight" (1:40,2:25 gives 1 40 times out of 65)
+final class WeightedChoice {
+    private final long[] values;
+    private final long[] cumulative; //cumulative[i] is the sum of the weights up to values[i]
+    private final long total;
+
+    private WeightedChoice(long[] values, long[] cumulative) {
+        this.values = values;
+        this.cumulative = cumulative;
+        this.total = cumulative[cumulative.length - 1];
+    }
+
+    static WeightedChoice parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("La distribución no puede estar vacía");
+        }
+        String[] entries = spec.split(",");
+        long[] values = new long[entries.length];
+        long[] cumulative = new long[entries.length];
+        long sum = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] pair = entries[i].split(":");
+            try {
+                if (pair.length != 2) throw new NumberFormatException();
+                values[i] = Long.parseLong(pair[0].trim());
+                long weight = Long.parseLong(pair[1].trim());
+                if (weight < 0) throw new NumberFormatException();
+                sum += weight;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Entrada inválida en la distribución, se esperaba valor:peso: " + entries[i]);
+            }
+            cumulative[i] = sum;
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("La suma de los pesos debe ser mayor a 0");
+        }
+        return new WeightedChoice(values, cumulative);
+    }
+
+    long next(SplittableRandom random) {
+        long ticket = random.nextLong(total);
+        int index = Arrays.binarySearch(cumulative, ticket + 1);
+        //Not found gives -(insertion point) - 1, the first cumulative weight above the ticket
+        return values[index >= 0 ? firstOf(index) : -index - 1];
+    }
+
+    //Zero weights repeat the previous cumulative value, the search may land on any of them
+    private int firstOf(int index) {
+        while (index > 0 && cumulative[index - 1] == cumulative[index]) index--;
+        return index;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.backend_martin_gamboa.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanEvaluation {
+    private Long loanId;
+    private Long userId;
+    private Integer status;
+    private Boolean incomeQuota; //Month quote up to 35% of the income
+    private Boolean debtIncome; //Debts up to 50% of the income
+    private Boolean maxCapital; //Capital within the financing limit of the loan type
+    private Integer age;
+    private Boolean ageLimit;
+    private Integer savingCapacity; //1: solid, 2: needs review, 3: insufficient, null when not evaluated
+    private List<String> failedRules;
+    private Boolean approved; //Every rule passed and the saving capacity is solid
+}
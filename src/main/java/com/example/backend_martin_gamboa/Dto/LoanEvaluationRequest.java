@@ -0,0 +1,18 @@
+package com.example.backend_martin_gamboa.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanEvaluationRequest {
+    private Double income; //Monthly income of the client
+    //Saving capacity, it is only evaluated when all of them are informed
+    private Double balance;
+    private Boolean consistentSaving;
+    private Boolean periodicSavings;
+    private Boolean seniorityBalance;
+    private Boolean recentRetirement;
+}
@@ -0,0 +1,20 @@
+package com.example.backend_martin_gamboa.Dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanScoringStatus {
+    private String jobId;
+    private String state; //RUNNING, COMPLETED or FAILED
+    private Long total; //Pending loans when the job started
+    private Long processed;
+    private Date startedDate;
+    private Date finishedDate;
+    private String error;
+}
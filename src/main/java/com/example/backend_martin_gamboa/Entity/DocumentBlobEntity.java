@@ -0,0 +1,19 @@
+package com.example.backend_martin_gamboa.Entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "document_blob")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentBlobEntity {
+    @Id
+    @Column(unique = true, nullable = false)
+    private String storageKey; //SHA-256 of the content, shared by every document with the same bytes
+    private Long refCount; //documents pointing to this blob, the bytes are freed when it reaches 0
+    private Long contentSize;
+}
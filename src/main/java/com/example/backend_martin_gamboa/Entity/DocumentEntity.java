@@ -5,8 +5,13 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Date;
+
 @Entity
-@Table(name = "document")
+@Table(name = "document", indexes = {
+        @Index(name = "idx_document_user_name", columnList = "userId, docName"),
+        @Index(name = "idx_document_loan", columnList = "loanId")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -16,9 +21,15 @@ public class DocumentEntity {
     @Column(unique = true, nullable = false)
     private Long id;
     private String docName;
-    @Lob
-    @Column(name = "content", columnDefinition = "LONGBLOB")
-    private byte[] content;
     private Long userId;
     private Long loanId;
+    private Long contentSize; //bytes
+    @Column(length = 64)
+    private String contentHash; //SHA-256 of the content, hex encoded
+    private String storageKey; //key of the content in the BlobStore
+    private String mediaType;
+    private Date uploadDate;
+    private Long storedSize; //bytes used in the BlobStore, contentSize unless compressed
+    private Boolean compressed;
+    private Long storeCpuNanos; //CPU time spent sniffing, hashing and compressing the upload
 }
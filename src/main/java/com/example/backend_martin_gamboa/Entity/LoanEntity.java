@@ -7,7 +7,10 @@ import lombok.Data;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "loan")
+@Table(name = "loan", indexes = {
+        @Index(name = "idx_loan_status_id", columnList = "status, id"),
+        @Index(name = "idx_loan_user_status", columnList = "userId, status")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -0,0 +1,28 @@
+package com.example.backend_martin_gamboa.Entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+//Result of the last bulk evaluation for a pending loan. The income of the client is not stored,
+//so the income rules are kept as the lowest income that passes them.
+@Entity
+@Table(name = "loan_score")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanScoreEntity {
+    @Id
+    @Column(nullable = false)
+    private Long loanId;
+    private Long userId;
+    private Boolean maxCapital;
+    private Double monthQuote;
+    private Double monthDebt; //Month quotes of the user's active loans, this one included
+    private Double minIncomeQuota; //Lowest income that passes incomeQuota
+    private Double minIncomeDebt; //Lowest income that passes debtIncome
+    private Date scoredDate;
+}
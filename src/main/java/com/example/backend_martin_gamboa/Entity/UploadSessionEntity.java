@@ -0,0 +1,28 @@
+package com.example.backend_martin_gamboa.Entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Entity
+@Table(name = "upload_session", indexes = {
+        @Index(name = "idx_upload_session_created", columnList = "createdDate")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionEntity {
+    @Id
+    @Column(unique = true, nullable = false)
+    private String id;
+    private Long userId;
+    private Long loanId;
+    private String docName;
+    private String mediaType;
+    private Integer nextChunk; //number of the next chunk expected, starting at 0
+    private Long receivedBytes;
+    private Date createdDate;
+}
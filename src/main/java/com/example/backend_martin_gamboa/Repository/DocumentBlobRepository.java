@@ -0,0 +1,47 @@
+package com.example.backend_martin_gamboa.Repository;
+
+import com.example.backend_martin_gamboa.Entity.DocumentBlobEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DocumentBlobRepository extends JpaRepository<DocumentBlobEntity, String> {
+    //Plain insert (save would merge), fails if another upload registered the same content first
+    @Transactional
+    @Modifying
+    @Query("insert into DocumentBlobEntity (storageKey, refCount, contentSize) values (:storageKey, 1, :contentSize)")
+    public int insertBlob(@Param("storageKey") String storageKey, @Param("contentSize") Long contentSize);
+
+    @Transactional
+    @Modifying
+    @Query("update DocumentBlobEntity b set b.refCount = b.refCount + 1 where b.storageKey = :storageKey")
+    public int incrementRefCount(@Param("storageKey") String storageKey);
+
+    //Drops one reference per document of the loans, must run before those documents are deleted
+    @Transactional
+    @Modifying
+    @Query("update DocumentBlobEntity b set b.refCount = b.refCount - " +
+            "(select count(d) from DocumentEntity d where d.storageKey = b.storageKey and d.loanId in :loanIds) " +
+            "where b.storageKey in (select d.storageKey from DocumentEntity d where d.loanId in :loanIds)")
+    public int releaseLoanReferences(@Param("loanIds") Collection<Long> loanIds);
+
+    @Query("select b.storageKey from DocumentBlobEntity b where b.storageKey in :storageKeys and b.refCount > 0")
+    public List<String> findReferencedKeys(@Param("storageKeys") Collection<String> storageKeys);
+
+    //Called after the releasing transaction committed, so it needs its own
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public boolean existsByStorageKey(String storageKey);
+
+    @Transactional
+    @Modifying
+    @Query("delete from DocumentBlobEntity b where b.storageKey in :storageKeys and b.refCount <= 0")
+    public int deleteUnreferenced(@Param("storageKeys") Collection<String> storageKeys);
+}
@@ -0,0 +1,16 @@
+package com.example.backend_martin_gamboa.Repository;
+
+/**
+ * Metadata only view of a document, used for listings so the storage details stay out of the queries.
+ */
+public interface DocumentMeta {
+    Long getId();
+    String getDocName();
+    Long getUserId();
+    Long getLoanId();
+    Long getContentSize();
+    String getContentHash();
+    String getMediaType();
+    Long getStoredSize();
+    Boolean getCompressed();
+}
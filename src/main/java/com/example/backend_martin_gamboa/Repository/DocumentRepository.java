@@ -1,11 +1,57 @@
 package com.example.backend_martin_gamboa.Repository;
 
 import com.example.backend_martin_gamboa.Entity.DocumentEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface DocumentRepository extends JpaRepository<DocumentEntity, Long> {
     public List<DocumentEntity> findByUserId(Long UserId);
     public List<DocumentEntity> findByLoanId(Long LoanId);
+    public List<DocumentEntity> findByLoanIdInOrderByLoanIdAscIdAsc(Collection<Long> loanIds);
+    public DocumentEntity findFirstByUserIdAndDocNameOrderByIdAsc(Long userId, String docName); //uses idx_document_user_name
+    public List<DocumentMeta> findMetaByUserIdOrderByIdAsc(Long userId);
+    public Slice<DocumentMeta> findMetaByLoanId(Long loanId, Pageable pageable); //uses idx_document_loan
+
+    @Query("select count(d) as documents, coalesce(sum(d.contentSize), 0) as contentBytes, " +
+            "coalesce(sum(d.storedSize), 0) as storedBytes, coalesce(sum(d.storeCpuNanos), 0) as storeCpuNanos " +
+            "from DocumentEntity d where d.storedSize is not null")
+    public DocumentStorageStats storageStats();
+
+    @Query("select d.storageKey from DocumentEntity d where d.loanId in :loanIds and d.storageKey is not null")
+    public List<String> findStorageKeysByLoanIdIn(@Param("loanIds") Collection<Long> loanIds);
+
+    //Fills in the blob metadata of a document saved before the blob store, only while it has no storage key
+    @Transactional
+    @Modifying
+    @Query("update DocumentEntity d set d.storageKey = :storageKey, d.contentSize = :contentSize, d.contentHash = :contentHash, " +
+            "d.storedSize = :storedSize, d.compressed = :compressed, d.storeCpuNanos = :storeCpuNanos " +
+            "where d.id = :id and d.storageKey is null")
+    public int attachLegacyBlob(@Param("id") Long id, @Param("storageKey") String storageKey,
+                                @Param("contentSize") Long contentSize, @Param("contentHash") String contentHash,
+                                @Param("storedSize") Long storedSize, @Param("compressed") Boolean compressed,
+                                @Param("storeCpuNanos") Long storeCpuNanos);
+
+    //Called after the releasing transaction committed, so it needs its own
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public boolean existsByStorageKey(String storageKey);
+
+    //Single statement deletes, derived deleteBy methods would load and delete every row one by one
+    @Transactional
+    @Modifying
+    @Query("delete from DocumentEntity d where d.loanId = :loanId")
+    public int deleteInBulkByLoanId(@Param("loanId") Long loanId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from DocumentEntity d where d.loanId in :loanIds")
+    public int deleteInBulkByLoanIdIn(@Param("loanIds") Collection<Long> loanIds);
 }
@@ -0,0 +1,11 @@
+package com.example.backend_martin_gamboa.Repository;
+
+/**
+ * Totals of the stored documents, to follow the savings of compression at rest.
+ */
+public interface DocumentStorageStats {
+    Long getDocuments();
+    Long getContentBytes(); //original size of the documents
+    Long getStoredBytes(); //bytes used in the BlobStore, shared blobs are counted once per document
+    Long getStoreCpuNanos();
+}
@@ -1,16 +1,40 @@
 package com.example.backend_martin_gamboa.Repository;
 
 import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface LoanRepository extends JpaRepository<LoanEntity, Long> {
     public List<LoanEntity> findByUserId(long userId);
     public List<LoanEntity> findByCapital(Double capital);
     List<LoanEntity> findByTerm(Integer term);
+    //Keyset pages of the loans outside the given statuses, the pageable only carries the limit and the id order
+    List<LoanEntity> findByStatusNotInAndIdGreaterThan(Collection<Integer> statuses, Long id, Pageable pageable);
+    List<LoanEntity> findByStatusNotInAndIdLessThan(Collection<Integer> statuses, Long id, Pageable pageable);
+    List<LoanEntity> findByIdGreaterThan(Long id, Pageable pageable);
+    //Sum of the month quotes of the user's loans that are not in the given statuses, 0 when there are none
+    @Query("select coalesce(sum(l.monthQuote), 0) from LoanEntity l where l.userId = :userId and (l.status is null or l.status not in :statuses)")
+    Double sumMonthQuoteByUserIdAndStatusNotIn(@Param("userId") Long userId, @Param("statuses") Collection<Integer> statuses);
+    //Same sum for several users at once
+    @Query("select l.userId as userId, coalesce(sum(l.monthQuote), 0) as debt from LoanEntity l where l.userId in :userIds and (l.status is null or l.status not in :statuses) group by l.userId")
+    List<UserDebt> sumMonthQuoteByUserIdInAndStatusNotIn(@Param("userIds") Collection<Long> userIds, @Param("statuses") Collection<Integer> statuses);
+    long countByStatusNotIn(Collection<Integer> statuses);
+    //Rows are fetched from the database in blocks while the stream is consumed, it must be closed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select l from LoanEntity l order by l.id")
+    Stream<LoanEntity> streamAllByOrderById();
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<LoanEntity> streamByStatusNotIn(Collection<Integer> statuses, Sort sort);
 }
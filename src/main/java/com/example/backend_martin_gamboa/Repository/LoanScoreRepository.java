@@ -0,0 +1,9 @@
+package com.example.backend_martin_gamboa.Repository;
+
+import com.example.backend_martin_gamboa.Entity.LoanScoreEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LoanScoreRepository extends JpaRepository<LoanScoreEntity, Long> {
+}
@@ -0,0 +1,24 @@
+package com.example.backend_martin_gamboa.Repository;
+
+import com.example.backend_martin_gamboa.Entity.UploadSessionEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSessionEntity, String> {
+    //Returns 0 when the session is already gone, so commit, cancel and expiry can claim it only once
+    @Transactional
+    @Modifying
+    @Query("delete from UploadSessionEntity s where s.id = :id")
+    public int deleteInBulkById(@Param("id") String id);
+
+    @Query("select s.id from UploadSessionEntity s where s.createdDate < :before")
+    public List<String> findIdsCreatedBefore(@Param("before") Date before); //uses idx_upload_session_created
+}
@@ -0,0 +1,9 @@
+package com.example.backend_martin_gamboa.Repository;
+
+/**
+ * Month quotes of the active loans of a user, added up by the database.
+ */
+public interface UserDebt {
+    Long getUserId();
+    Double getDebt();
+}
@@ -1,10 +1,16 @@
 package com.example.backend_martin_gamboa.Repository;
 
 import com.example.backend_martin_gamboa.Entity.UserEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<UserEntity, Long> {
@@ -12,5 +18,10 @@ public interface UserRepository extends JpaRepository<UserEntity, Long> {
     public List<UserEntity> findByName(String name); //considering people with the same name
     public UserEntity findByPhone(String phone);
     public UserEntity findByRut(String rut);
+    List<UserEntity> findByIdGreaterThan(Long id, Pageable pageable);
+    //Rows are fetched from the database in blocks while the stream is consumed, it must be closed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select u from UserEntity u order by u.id")
+    Stream<UserEntity> streamAllByOrderById();
 
 }
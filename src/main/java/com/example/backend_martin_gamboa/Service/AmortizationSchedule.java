@@ -0,0 +1,141 @@
+package com.example.backend_martin_gamboa.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+//Per month amortization of a loan (french system), the same monthly payment and insurances LoanService uses.
+//The rows live in primitive arrays, one slot per month, and are written without creating objects per row.
+public final class AmortizationSchedule {
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    private static final String CSV_HEADER = "period,payment,interest,principal,deductionSure,fireSure,total,balance\n";
+
+    private final int payments;
+    private final double monthPayment;
+    private final double deductionSure;
+    private final double[] interest;
+    private final double[] principal;
+    private final double[] balance;
+
+    private AmortizationSchedule(int payments, double monthPayment, double deductionSure) {
+        this.payments = payments;
+        this.monthPayment = monthPayment;
+        this.deductionSure = deductionSure;
+        this.interest = new double[payments];
+        this.principal = new double[payments];
+        this.balance = new double[payments];
+    }
+
+    //capital of the loan, term in years and anual interest in percentage
+    public static AmortizationSchedule of(double capital, int term, double anualInterest) {
+        if (term <= 0 || term > LoanMath.MAX_TERM) {
+            throw new IllegalArgumentException("El plazo debe estar entre 1 y " + LoanMath.MAX_TERM + " años");
+        }
+        int payments = term * 12;
+        double monthInterest = LoanMath.monthInterest(anualInterest);
+        double monthPayment;
+        if (monthInterest == 0) {
+            monthPayment = capital / payments;
+        } else {
+            monthPayment = LoanMath.rawMonthPayment(capital, term, anualInterest);
+        }
+        AmortizationSchedule schedule = new AmortizationSchedule(payments, monthPayment, capital * LoanMath.DEDUCTION_SURE_RATE);
+        double remaining = capital;
+        for (int i = 0; i < payments; i++) {
+            double monthInterestPaid = remaining * monthInterest;
+            //The last payment settles whatever the rounding of the previous months left
+            double monthPrincipal = i == payments - 1 ? remaining : monthPayment - monthInterestPaid;
+            remaining -= monthPrincipal;
+            schedule.interest[i] = monthInterestPaid;
+            schedule.principal[i] = monthPrincipal;
+            schedule.balance[i] = remaining;
+        }
+        return schedule;
+    }
+
+    public static boolean isSupportedFormat(String format) {
+        return FORMAT_NDJSON.equals(format) || FORMAT_CSV.equals(format);
+    }
+
+    public int getPayments() { return payments; }
+
+    public double getMonthPayment() { return monthPayment; }
+
+    public double getDeductionSure() { return deductionSure; }
+
+    public double getFireSure() { return LoanMath.FIRE_SURE; }
+
+    //Months are numbered from 1
+    public double getInterest(int period) { return interest[period - 1]; }
+
+    public double getPrincipal(int period) { return principal[period - 1]; }
+
+    public double getBalance(int period) { return balance[period - 1]; }
+
+    //Payment plus both insurances, what the client pays each month
+    public double getMonthTotal() { return monthPayment + deductionSure + LoanMath.FIRE_SURE; }
+
+    //Writes one row per month, amounts rounded to cents
+    public void writeTo(OutputStream out, String format) throws IOException {
+        boolean csv = FORMAT_CSV.equals(format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        StringBuilder row = new StringBuilder(192);
+        if (csv) {
+            writer.write(CSV_HEADER);
+        }
+        for (int i = 0; i < payments; i++) {
+            row.setLength(0);
+            if (csv) {
+                appendCsvRow(row, i);
+            } else {
+                appendJsonRow(row, i);
+            }
+            writer.append(row);
+        }
+        writer.flush();
+    }
+
+    private void appendJsonRow(StringBuilder row, int i) {
+        row.append("{\"period\":").append(i + 1);
+        appendCents(row.append(",\"payment\":"), monthPayment);
+        appendCents(row.append(",\"interest\":"), interest[i]);
+        appendCents(row.append(",\"principal\":"), principal[i]);
+        appendCents(row.append(",\"deductionSure\":"), deductionSure);
+        appendCents(row.append(",\"fireSure\":"), LoanMath.FIRE_SURE);
+        appendCents(row.append(",\"total\":"), getMonthTotal());
+        appendCents(row.append(",\"balance\":"), balance[i]);
+        row.append("}\n");
+    }
+
+    private void appendCsvRow(StringBuilder row, int i) {
+        row.append(i + 1);
+        appendCents(row.append(','), monthPayment);
+        appendCents(row.append(','), interest[i]);
+        appendCents(row.append(','), principal[i]);
+        appendCents(row.append(','), deductionSure);
+        appendCents(row.append(','), LoanMath.FIRE_SURE);
+        appendCents(row.append(','), getMonthTotal());
+        appendCents(row.append(','), balance[i]);
+        row.append('\n');
+    }
+
+    //Appends the amount with two decimals, without going through String.format or BigDecimal
+    static void appendCents(StringBuilder sb, double amount) {
+        long cents = Math.round(amount * 100);
+        if (cents < 0) {
+            sb.append('-');
+            cents = -cents;
+        }
+        sb.append(cents / 100).append('.');
+        long rest = cents % 100;
+        if (rest < 10) {
+            sb.append('0');
+        }
+        sb.append(rest);
+    }
+}
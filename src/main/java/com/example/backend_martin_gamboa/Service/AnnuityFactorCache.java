@@ -0,0 +1,53 @@
+package com.example.backend_martin_gamboa.Service;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//Shared cache of (1 + monthInterest)^payments, the expensive part of the monthly payment formula.
+//Loans use a handful of rates and terms, so a small table keyed on the primitive values answers almost every call.
+//Each key has a fixed slot, a new key replaces the previous one, so the size never grows.
+final class AnnuityFactorCache {
+    static final int SIZE = 1024; //Power of two, slots are picked with a mask
+
+    private static final AtomicReferenceArray<Entry> TABLE = new AtomicReferenceArray<>(SIZE);
+
+    private AnnuityFactorCache() {
+    }
+
+    //Same value as Math.pow(1 + monthInterest, payments)
+    static double growth(double monthInterest, int payments) {
+        long rateBits = Double.doubleToLongBits(monthInterest);
+        int slot = slot(rateBits, payments);
+        Entry entry = TABLE.get(slot);
+        if (entry != null && entry.rateBits == rateBits && entry.payments == payments) {
+            return entry.growth;
+        }
+        double growth = Math.pow(1 + monthInterest, payments);
+        //Entries are immutable, a reader sees either the old or the new one complete
+        TABLE.set(slot, new Entry(rateBits, payments, growth));
+        return growth;
+    }
+
+    private static int slot(long rateBits, int payments) {
+        long hash = (rateBits ^ (rateBits >>> 32)) * 31 + payments;
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 54) & (SIZE - 1);
+    }
+
+    static void clear() {
+        for (int i = 0; i < SIZE; i++) {
+            TABLE.set(i, null);
+        }
+    }
+
+    private static final class Entry {
+        final long rateBits;
+        final int payments;
+        final double growth;
+
+        Entry(long rateBits, int payments, double growth) {
+            this.rateBits = rateBits;
+            this.payments = payments;
+            this.growth = growth;
+        }
+    }
+}
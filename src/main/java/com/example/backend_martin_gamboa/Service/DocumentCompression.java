@@ -0,0 +1,74 @@
+package com.example.backend_martin_gamboa.Service;
+
+import java.util.zip.Deflater;
+
+/**
+ * Decides if a document is worth compressing before it is stored, looking at the first bytes of the content.
+ * Formats that are already compressed are skipped by their magic number, the rest is decided by compressing
+ * the sample with the fastest level and checking how much it shrinks.
+ */
+final class DocumentCompression {
+    static final int SAMPLE_SIZE = 64 * 1024;
+    static final double MAX_RATIO = 0.9; //compress only if the sample shrinks at least 10%
+
+    private static final byte[][] COMPRESSED_FORMATS = {
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},        //JPEG
+            {(byte) 0x89, 'P', 'N', 'G'},                   //PNG
+            {'G', 'I', 'F', '8'},                           //GIF
+            {'P', 'K', 0x03, 0x04},                         //ZIP, docx, xlsx, odt
+            {0x1F, (byte) 0x8B},                            //GZIP
+            {'7', 'z', (byte) 0xBC, (byte) 0xAF},           //7z
+            {'R', 'a', 'r', '!'},                           //RAR
+            {'B', 'Z', 'h'},                                //BZIP2
+            {(byte) 0xFD, '7', 'z', 'X', 'Z'},              //XZ
+    };
+
+    private DocumentCompression() {
+    }
+
+    static boolean isWorthCompressing(byte[] sample) {
+        if (sample.length == 0 || isCompressedFormat(sample)) {
+            return false;
+        }
+        return trialRatio(sample) <= MAX_RATIO;
+    }
+
+    static boolean isCompressedFormat(byte[] sample) {
+        for (byte[] magic : COMPRESSED_FORMATS) {
+            if (startsWith(sample, magic)) {
+                return true;
+            }
+        }
+        //RIFF containers holding WEBP images
+        return startsWith(sample, new byte[]{'R', 'I', 'F', 'F'}) && sample.length >= 12
+                && sample[8] == 'W' && sample[9] == 'E' && sample[10] == 'B' && sample[11] == 'P';
+    }
+
+    static double trialRatio(byte[] sample) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buffer = new byte[8 * 1024];
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(buffer);
+            }
+            return (double) compressed / sample.length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean startsWith(byte[] sample, byte[] magic) {
+        if (sample.length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (sample[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Config.MetricsConfig;
+import com.example.backend_martin_gamboa.Entity.DocumentEntity;
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes documents as a ZIP stream. The ZIP of one loan copies one document at a time, so memory stays flat.
+ * The multi-loan export reads the next documents ahead on a shared, bounded pool while the current one is written.
+ * Read-ahead buffers come out of a byte budget shared by every export, when it runs out documents are streamed in place.
+ */
+@Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, histogram = true)
+public class DocumentExportService {
+    private final DocumentService documentService;
+    private final ExecutorService prefetchPool;
+    private final int prefetchWindow;
+    private final long prefetchMaxSize;
+    private final Semaphore prefetchBudget; //one permit per buffered byte, across all the exports
+
+    public DocumentExportService(DocumentService documentService,
+                                 @Value("${document.export.prefetch-threads:4}") int prefetchThreads,
+                                 @Value("${document.export.prefetch-window:4}") int prefetchWindow,
+                                 @Value("${document.export.prefetch-max-size:2097152}") int prefetchMaxSize,
+                                 @Value("${document.export.prefetch-budget:33554432}") int prefetchBudget) {
+        //The writer takes each document out of the window, an empty one would leave it with nothing to write
+        if (prefetchWindow < 1 || prefetchThreads < 1) {
+            throw new IllegalArgumentException("document.export.prefetch-window y document.export.prefetch-threads deben ser al menos 1");
+        }
+        this.documentService = documentService;
+        this.prefetchWindow = prefetchWindow;
+        this.prefetchMaxSize = Math.min(prefetchMaxSize, prefetchBudget);
+        this.prefetchBudget = new Semaphore(prefetchBudget);
+        AtomicInteger count = new AtomicInteger();
+        this.prefetchPool = Executors.newFixedThreadPool(prefetchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "document-prefetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchPool.shutdownNow();
+    }
+
+    /**
+     * Writes the documents, in the given order, as a ZIP to out, copying one document at a time.
+     * Repeated names get a " (n)" suffix instead of breaking the ZIP.
+     */
+    public void streamZip(List<DocumentEntity> docs, OutputStream out) throws IOException {
+        ZipOutputStream zipOut = new ZipOutputStream(out);
+        Set<String> names = new HashSet<>();
+        for (DocumentEntity doc : docs) {
+            zipOut.putNextEntry(new ZipEntry(uniqueName(names, doc.getDocName())));
+            try (InputStream in = documentService.openDocument(doc)) {
+                in.transferTo(zipOut);
+            }
+            zipOut.closeEntry();
+        }
+        zipOut.finish(); // Finish the ZIP, the caller closes the output
+    }
+
+    /**
+     * Writes the documents, in the given order, as a ZIP to out, reading the next ones ahead.
+     * With folderPerLoan every entry goes into a loan_{loanId} folder. Repeated names get a " (n)" suffix.
+     */
+    public void writeZip(List<DocumentEntity> docs, boolean folderPerLoan, OutputStream out) throws IOException {
+        ZipOutputStream zipOut = new ZipOutputStream(out);
+        Set<String> names = new HashSet<>();
+        Deque<Prefetch> window = new ArrayDeque<>();
+        int scheduled = 0;
+        try {
+            for (DocumentEntity doc : docs) {
+                //Keep the window full, reads run ahead of the writer
+                while (scheduled < docs.size() && window.size() < prefetchWindow) {
+                    window.add(prefetch(docs.get(scheduled++)));
+                }
+                String folder = folderPerLoan ? "loan_" + doc.getLoanId() + "/" : "";
+                zipOut.putNextEntry(new ZipEntry(uniqueName(names, folder + doc.getDocName())));
+                Prefetch next = window.poll();
+                try {
+                    byte[] content = await(next.content());
+                    if (content != null) {
+                        zipOut.write(content);
+                    } else {
+                        try (InputStream in = documentService.openDocument(doc)) {
+                            in.transferTo(zipOut);
+                        }
+                    }
+                } finally {
+                    prefetchBudget.release(next.permits());
+                }
+                zipOut.closeEntry();
+            }
+            zipOut.finish(); // Finish the ZIP, the caller closes the output
+        } finally {
+            //The client may have gone away, do not keep reading for nothing
+            for (Prefetch pending : window) {
+                pending.content().cancel(true);
+                prefetchBudget.release(pending.permits());
+            }
+        }
+    }
+
+    //Reads the whole document on the pool, a null content means the writer streams it in place.
+    //That happens for big documents and when the shared budget is spent, the writer never waits for budget.
+    private Prefetch prefetch(DocumentEntity doc) {
+        Long size = doc.getContentSize();
+        if (size == null || size > prefetchMaxSize || !prefetchBudget.tryAcquire(size.intValue())) {
+            return new Prefetch(CompletableFuture.completedFuture(null), 0);
+        }
+        Future<byte[]> content = prefetchPool.submit(() -> {
+            try (InputStream in = documentService.openDocument(doc)) {
+                return in.readAllBytes();
+            }
+        });
+        return new Prefetch(content, size.intValue());
+    }
+
+    private record Prefetch(Future<byte[]> content, int permits) {
+    }
+
+    private static byte[] await(Future<byte[]> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Exportación interrumpida");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    static String uniqueName(Set<String> names, String name) {
+        if (names.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        boolean hasExtension = dot > name.lastIndexOf('/') + 1;
+        String base = hasExtension ? name.substring(0, dot) : name;
+        String extension = hasExtension ? name.substring(dot) : "";
+        for (int copy = 2; ; copy++) {
+            String candidate = base + " (" + copy + ")" + extension;
+            if (names.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+}
@@ -1,20 +1,88 @@
 package com.example.backend_martin_gamboa.Service;
 
+import com.example.backend_martin_gamboa.Config.MetricsConfig;
 import com.example.backend_martin_gamboa.Entity.DocumentEntity;
+import com.example.backend_martin_gamboa.Entity.UploadSessionEntity;
 import com.example.backend_martin_gamboa.Entity.UserEntity;
+import com.example.backend_martin_gamboa.Repository.DocumentBlobRepository;
+import com.example.backend_martin_gamboa.Repository.DocumentMeta;
 import com.example.backend_martin_gamboa.Repository.DocumentRepository;
+import com.example.backend_martin_gamboa.Repository.DocumentStorageStats;
+import com.example.backend_martin_gamboa.Repository.UploadSessionRepository;
+import com.example.backend_martin_gamboa.Storage.BlobStore;
+import com.example.backend_martin_gamboa.Storage.StoredBlob;
+import com.example.backend_martin_gamboa.Storage.UploadStaging;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, histogram = true)
 public class DocumentService {
     @Autowired
     DocumentRepository documentRepository;
+    @Autowired
+    DocumentBlobRepository documentBlobRepository;
+    @Autowired
+    UploadSessionRepository uploadSessionRepository;
+    @Autowired
+    BlobStore blobStore;
+    @Autowired
+    UploadStaging uploadStaging;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Value("${document.upload.max-size:104857600}")
+    long maxUploadSize; //limit of the chunked uploads, 100 MB by default
+    @Value("${document.upload.session-ttl:PT24H}")
+    Duration uploadSessionTtl; //sessions neither committed nor cancelled are removed after this time
+
+    static final int MAX_PAGE_SIZE = 200;
+
+    //Uploads retain a blob and releases delete its file under the same lock, striped by storage key
+    private final Lock[] blobLocks = Stream.generate(ReentrantLock::new).limit(64).toArray(Lock[]::new);
+    //Chunks, commit, cancel and expiry of an upload session run one at a time, striped by session id
+    private final Lock[] sessionLocks = Stream.generate(ReentrantLock::new).limit(64).toArray(Lock[]::new);
 
     public DocumentEntity uploadDocument(MultipartFile file, Long userId, Long loanId, String docName) throws IOException {
         //Verify if file is empty
@@ -25,23 +93,184 @@ public class DocumentService {
         if (file.getSize() > 10 * 1024 * 1024) {  // 10 MB
             throw new IOException("El archivo es demasiado grande. Tamaño máximo permitido es 10 MB.");
         }
-        //Generate the document
-        DocumentEntity doc = new DocumentEntity();
-        doc.setContent(file.getBytes());
-        doc.setDocName(docName);
-        doc.setUserId(userId);
-        doc.setLoanId(loanId);
-        return documentRepository.save(doc);
+        //Stream the content to the blob store, only the metadata goes to the database
+        return saveDocument(file, userId, loanId, docName, file.getContentType());
     }
 
-    public DocumentEntity consultDocument(Long userId, String docName){
-        List<DocumentEntity> docs = documentRepository.findByUserId(userId);
-        for (DocumentEntity doc : docs) {
-            if(doc.getDocName().equals(docName)){
-                return doc;
+    public UploadSessionEntity createUploadSession(Long userId, Long loanId, String docName, String mediaType){
+        UploadSessionEntity session = new UploadSessionEntity();
+        session.setId(UUID.randomUUID().toString());
+        session.setUserId(userId);
+        session.setLoanId(loanId);
+        session.setDocName(docName);
+        session.setMediaType(mediaType);
+        session.setNextChunk(0);
+        session.setReceivedBytes(0L);
+        session.setCreatedDate(new Date());
+        return uploadSessionRepository.save(session);
+    }
+
+    public UploadSessionEntity getUploadSession(String sessionId){
+        return uploadSessionRepository.findById(sessionId).orElse(null);
+    }
+
+    //Appends a chunk to the session. Chunks must arrive in order, resending the last received one is a no-op.
+    //The session is read under its lock, a retry sent while the first request is still writing waits for it.
+    public UploadSessionEntity appendChunk(String sessionId, Integer chunkNumber, InputStream chunk) throws IOException {
+        return withLock(sessionLocks, sessionId, () -> {
+            UploadSessionEntity session = getUploadSession(sessionId);
+            if (session == null) return null;
+            if (chunkNumber < session.getNextChunk()) {
+                return session; //Already received, the client is retrying after a lost response
+            }
+            if (chunkNumber > session.getNextChunk()) {
+                throw new IllegalArgumentException("Se esperaba el fragmento " + session.getNextChunk() + " y se recibió el " + chunkNumber);
             }
+            long written = uploadStaging.append(sessionId, session.getReceivedBytes(), chunk, maxUploadSize);
+            session.setReceivedBytes(session.getReceivedBytes() + written);
+            session.setNextChunk(session.getNextChunk() + 1);
+            return uploadSessionRepository.save(session);
+        });
+    }
+
+    //Assembles the received chunks into a document, the same way uploadDocument does
+    public DocumentEntity commitUploadSession(String sessionId) throws IOException {
+        //Claim the session before saving, a second commit of the same session finds nothing to delete
+        //and a late chunk finds no session to append to
+        UploadSessionEntity session = withLock(sessionLocks, sessionId, () -> {
+            UploadSessionEntity current = getUploadSession(sessionId);
+            if (current == null || current.getReceivedBytes() == 0) return null;
+            return uploadSessionRepository.deleteInBulkById(sessionId) == 1 ? current : null;
+        });
+        if (session == null) return null;
+        DocumentEntity doc;
+        try {
+            doc = saveDocument(() -> uploadStaging.open(sessionId), session.getUserId(), session.getLoanId(),
+                    session.getDocName(), session.getMediaType());
+        } catch (IOException | RuntimeException e) {
+            //Give the session back so the client can commit again
+            uploadSessionRepository.save(session);
+            throw e;
         }
-        return null;
+        uploadStaging.delete(sessionId);
+        return doc;
+    }
+
+    public void deleteUploadSession(String sessionId) throws IOException {
+        withLock(sessionLocks, sessionId, () -> {
+            uploadSessionRepository.deleteInBulkById(sessionId);
+            uploadStaging.delete(sessionId);
+            return null;
+        });
+    }
+
+    //Removes the sessions older than document.upload.session-ttl with their staging files, returns how many
+    @Scheduled(fixedDelayString = "${document.upload.sweep-interval:PT1H}", initialDelayString = "${document.upload.sweep-interval:PT1H}")
+    public int expireUploadSessions() {
+        Date before = new Date(System.currentTimeMillis() - uploadSessionTtl.toMillis());
+        int expired = 0;
+        for (String sessionId : uploadSessionRepository.findIdsCreatedBefore(before)) {
+            try {
+                //A commit running right now claimed the session first, its file is left alone
+                boolean claimed = withLock(sessionLocks, sessionId, () -> {
+                    if (uploadSessionRepository.deleteInBulkById(sessionId) != 1) return false;
+                    uploadStaging.delete(sessionId);
+                    return true;
+                });
+                if (claimed) expired++;
+            } catch (IOException e) {
+                //Nothing points to the file anymore, it only takes disk space
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    //The content is read again only if a concurrent delete removed its blob before it was retained
+    private DocumentEntity saveDocument(InputStreamSource content, Long userId, Long loanId, String docName, String mediaType) throws IOException {
+        long cpuStart = cpuTime();
+        StoredBlob stored = storeContent(content);
+        long cpuNanos = cpuTime() - cpuStart;
+        DocumentEntity saved = retainBlob(stored, content, blob -> {
+            //Generate the document
+            DocumentEntity doc = new DocumentEntity();
+            doc.setDocName(docName);
+            doc.setUserId(userId);
+            doc.setLoanId(loanId);
+            doc.setContentSize(blob.getSize());
+            doc.setContentHash(blob.getSha256());
+            doc.setStorageKey(blob.getKey());
+            doc.setMediaType(mediaType != null ? mediaType : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            doc.setUploadDate(new Date());
+            doc.setStoredSize(blob.getStoredSize());
+            doc.setCompressed(blob.getCompressed());
+            doc.setStoreCpuNanos(cpuNanos);
+            return documentRepository.save(doc);
+        });
+        bytesCounter("uploaded").increment(saved.getContentSize());
+        return saved;
+    }
+
+    //Moves the content of a document saved before the blob store (old content column) into the store.
+    //Returns false if the document already has a storage key, nothing is retained then.
+    public boolean migrateLegacyContent(Long documentId, InputStreamSource content) throws IOException {
+        long cpuStart = cpuTime();
+        StoredBlob stored = storeContent(content);
+        long cpuNanos = cpuTime() - cpuStart;
+        Boolean migrated = retainBlob(stored, content, blob -> documentRepository.attachLegacyBlob(documentId, blob.getKey(),
+                blob.getSize(), blob.getSha256(), blob.getStoredSize(), blob.getCompressed(), cpuNanos) == 0 ? null : true);
+        return migrated != null;
+    }
+
+    //Look at the first bytes to decide if the content is worth compressing, then store the whole stream
+    private StoredBlob storeContent(InputStreamSource content) throws IOException {
+        try (InputStream in = content.getInputStream()) {
+            byte[] sample = in.readNBytes(DocumentCompression.SAMPLE_SIZE);
+            boolean compress = DocumentCompression.isWorthCompressing(sample);
+            return blobStore.put(new SequenceInputStream(new ByteArrayInputStream(sample), in), compress);
+        }
+    }
+
+    private static long cpuTime() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    //The bytes are counted as downloaded while they are read
+    public InputStream openDocument(DocumentEntity doc) throws IOException {
+        requireStored(doc);
+        return new CountingInputStream(blobStore.open(doc.getStorageKey()), bytesCounter("downloaded"));
+    }
+
+    //Copies count bytes of the content, starting at position, to the output
+    public long transferDocument(DocumentEntity doc, long position, long count, OutputStream out) throws IOException {
+        requireStored(doc);
+        long transferred = blobStore.transferTo(doc.getStorageKey(), position, count, Channels.newChannel(out));
+        bytesCounter("downloaded").increment(transferred);
+        return transferred;
+    }
+
+    //Documents saved before the blob store have no storage key until LegacyContentMigration moves their content
+    private static void requireStored(DocumentEntity doc) throws FileNotFoundException {
+        if (doc.getStorageKey() == null) {
+            throw new FileNotFoundException("El documento " + doc.getId() + " aún no tiene su contenido en el almacenamiento");
+        }
+    }
+
+    private Counter bytesCounter(String direction) {
+        return Counter.builder(MetricsConfig.DOCUMENT_BYTES).baseUnit("bytes").tag("direction", direction).register(meterRegistry);
+    }
+
+    public DocumentStorageStats consultStorageStats(){
+        return documentRepository.storageStats();
+    }
+
+    public DocumentEntity consultDocument(Long userId, String docName){
+        return documentRepository.findFirstByUserIdAndDocNameOrderByIdAsc(userId, docName);
+    }
+
+    public List<DocumentMeta> consultUserDocuments(Long userId){
+        return documentRepository.findMetaByUserIdOrderByIdAsc(userId);
     }
 
     public List<DocumentEntity> consultLoanDocuments(Long loanId){
@@ -49,17 +278,143 @@ public class DocumentService {
         return docs;
     }
 
+    //Documents of several loans with a single query, grouped by loan
+    public List<DocumentEntity> consultLoansDocuments(List<Long> loanIds){
+        return documentRepository.findByLoanIdInOrderByLoanIdAscIdAsc(loanIds);
+    }
+
+    public List<DocumentMeta> consultLoanDocumentsMeta(Long loanId, int page, int size){
+        Pageable pageable = PageRequest.of(page, Math.min(size, MAX_PAGE_SIZE), Sort.by("id"));
+        return documentRepository.findMetaByLoanId(loanId, pageable).getContent();
+    }
+
+    @Transactional
     public Boolean deleteLoanDocuments(Long loanId){
-        List<DocumentEntity> docs = documentRepository.findByLoanId(loanId);
         try{
-            for (DocumentEntity doc : docs) {
-                documentRepository.deleteById(doc.getId());
-            }
+            releaseLoanBlobs(List.of(loanId));
+            documentRepository.deleteInBulkByLoanId(loanId);
             return true;
         }
         catch(Exception e){
+            markRollbackOnly();
             return false;
         }
     }
 
+    //Deletes the documents of several loans in one transaction and returns how many were removed
+    @Transactional
+    public int deleteLoansDocuments(List<Long> loanIds){
+        if(loanIds == null || loanIds.isEmpty()) return 0;
+        releaseLoanBlobs(loanIds);
+        return documentRepository.deleteInBulkByLoanIdIn(loanIds);
+    }
+
+    //Saves what points to a stored blob and adds its reference in the same transaction, so a failed save leaves
+    //no reference behind. A null result means nothing was saved, and no reference is added.
+    //put may have found the file just before a release of the same content deleted it. Releases delete under the
+    //blob lock, which is held until the reference commits, so the file is checked here and stored again if it is gone.
+    private <T> T retainBlob(StoredBlob stored, InputStreamSource content, Function<StoredBlob, T> save) throws IOException {
+        return withLock(blobLocks, stored.getKey(), () -> {
+            StoredBlob blob = blobStore.exists(stored.getKey()) ? stored : storeContent(content);
+            TransactionCallback<T> saveWithReference = status -> {
+                T saved = save.apply(blob);
+                if (saved != null && documentBlobRepository.incrementRefCount(blob.getKey()) == 0) {
+                    documentBlobRepository.insertBlob(blob.getKey(), blob.getSize());
+                }
+                return saved;
+            };
+            try {
+                return transactionTemplate.execute(saveWithReference);
+            } catch (DataIntegrityViolationException e) {
+                //An upload of the same content on another instance registered it first, now the reference is an increment
+                return transactionTemplate.execute(saveWithReference);
+            }
+        });
+    }
+
+    //Drops the references held by the documents of the loans, must run before the documents are deleted.
+    //Blobs left without references are deleted once the transaction commits.
+    private void releaseLoanBlobs(List<Long> loanIds) {
+        List<String> storageKeys = documentRepository.findStorageKeysByLoanIdIn(loanIds);
+        if (storageKeys.isEmpty()) {
+            return;
+        }
+        documentBlobRepository.releaseLoanReferences(loanIds);
+        Set<String> freed = new HashSet<>(storageKeys);
+        //Documents stored before deduplication have no reference count, they own their blob
+        documentBlobRepository.findReferencedKeys(freed).forEach(freed::remove);
+        documentBlobRepository.deleteUnreferenced(freed);
+        afterCommit(() -> {
+            for (String storageKey : freed) {
+                try {
+                    withLock(blobLocks, storageKey, () -> {
+                        //An upload of the same content may have registered it again since the commit
+                        if (!documentBlobRepository.existsByStorageKey(storageKey) && !documentRepository.existsByStorageKey(storageKey)) {
+                            blobStore.delete(storageKey);
+                        }
+                        return null;
+                    });
+                } catch (IOException | RuntimeException e) {
+                    //The orphan file is reused if the same content is uploaded again
+                }
+            }
+        });
+    }
+
+    private static <T> T withLock(Lock[] locks, String key, LockedAction<T> action) throws IOException {
+        Lock lock = locks[Math.floorMod(key.hashCode(), locks.length)];
+        lock.lock();
+        try {
+            return action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static void markRollbackOnly() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final Counter counter;
+
+        CountingInputStream(InputStream in, Counter counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) counter.increment();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) counter.increment(read);
+            return read;
+        }
+    }
 }
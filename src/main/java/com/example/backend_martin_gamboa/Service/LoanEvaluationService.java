@@ -0,0 +1,66 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Config.MetricsConfig;
+import com.example.backend_martin_gamboa.Dto.LoanEvaluation;
+import com.example.backend_martin_gamboa.Dto.LoanEvaluationRequest;
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import com.example.backend_martin_gamboa.Entity.UserEntity;
+import com.example.backend_martin_gamboa.Repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Runs every evaluation rule of a loan over the loan and its user, each one read a single time
+@Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, histogram = true)
+public class LoanEvaluationService {
+    @Autowired
+    LoanService loanService;
+    @Autowired
+    UserService userService;
+    @Autowired
+    UserRepository userRepository;
+
+    public LoanEvaluation evaluate(Long loanId, LoanEvaluationRequest request){
+        LoanEntity loan = loanService.getLoanById(loanId);
+        if(loan == null) return null;
+        UserEntity user = loan.getUserId() == null ? null : userRepository.findById(loan.getUserId()).orElse(null);
+
+        LoanEvaluation evaluation = new LoanEvaluation();
+        evaluation.setLoanId(loan.getId());
+        evaluation.setUserId(loan.getUserId());
+        evaluation.setStatus(loan.getStatus());
+        evaluation.setIncomeQuota(loanService.incomeQuota(loan, request.getIncome()));
+        evaluation.setDebtIncome(loan.getUserId() != null && loanService.debtIncome(loan.getUserId(), request.getIncome()));
+        evaluation.setMaxCapital(loanService.maxCapital(loan));
+        if(user != null){
+            evaluation.setAge(userService.userAge(user));
+            evaluation.setAgeLimit(userService.ageLimit(evaluation.getAge()));
+        }
+        else{
+            evaluation.setAgeLimit(false);
+        }
+        if(hasSavingInputs(request) && loan.getCapital() != null){
+            evaluation.setSavingCapacity(loanService.savingCapacity(request.getBalance(), loan, request.getConsistentSaving(),
+                    request.getPeriodicSavings(), request.getSeniorityBalance(), request.getRecentRetirement()));
+        }
+
+        List<String> failedRules = new ArrayList<>();
+        if(!evaluation.getIncomeQuota()) failedRules.add("incomeQuota");
+        if(!evaluation.getDebtIncome()) failedRules.add("debtIncome");
+        if(!evaluation.getMaxCapital()) failedRules.add("maxCapital");
+        if(!evaluation.getAgeLimit()) failedRules.add("ageLimit");
+        if(evaluation.getSavingCapacity() != null && evaluation.getSavingCapacity() == 3) failedRules.add("savingCapacity");
+        evaluation.setFailedRules(failedRules);
+        evaluation.setApproved(failedRules.isEmpty() && Integer.valueOf(1).equals(evaluation.getSavingCapacity()));
+        return evaluation;
+    }
+
+    private static boolean hasSavingInputs(LoanEvaluationRequest request){
+        return request.getBalance() != null && request.getConsistentSaving() != null && request.getPeriodicSavings() != null
+                && request.getSeniorityBalance() != null && request.getRecentRetirement() != null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.backend_martin_gamboa.Service;
+
+//Financial rules of the loans over primitives. Every method is stateless and does not allocate,
+//LoanService, the batch simulation and the bulk scoring call these instead of repeating the formulas.
+//The operations keep the order they had in LoanService, so the results are the same to the last bit.
+public final class LoanMath {
+    public static final double DEDUCTION_SURE_RATE = 0.0003; //Monthly deduction insurance over the capital
+    public static final double FIRE_SURE = 20000.0; //Monthly fire insurance
+    public static final double ADMIN_FEE_RATE = 0.01; //Administration fee over the capital, charged once
+    public static final double MAX_INCOME_QUOTA = 35; //Percentage of the income the month quote can take
+    public static final double MAX_DEBT_INCOME = 0.5; //Share of the income all the month quotes can take
+    public static final int MAX_TERM = 50; //Longest term in years the simulations, schedules and grids accept
+
+    private LoanMath() {
+    }
+
+    //term in years, interest anual in percentage
+    public static double monthInterest(double interest) {
+        return (interest / 12) / 100;
+    }
+
+    //Monthly payment without insurances, rounded to cents (simulateLoan)
+    public static double monthPayment(double capital, int term, double interest) {
+        return roundCents(rawMonthPayment(capital, term, interest));
+    }
+
+    //Monthly payment with both insurances, rounded to units (monthQuote)
+    public static double monthTotalPayment(double capital, int term, double interest) {
+        double totalMonthPayments = rawMonthPayment(capital, term, interest) + capital * DEDUCTION_SURE_RATE + FIRE_SURE;
+        return roundUnits(totalMonthPayments);
+    }
+
+    //Every month quote plus the administration fee, rounded to units (total)
+    public static double totalPayments(double capital, int term, double interest) {
+        int payments = term * 12;
+        double totalMonthPayments = rawMonthPayment(capital, term, interest) + capital * DEDUCTION_SURE_RATE + FIRE_SURE;
+        return roundUnits(roundUnits(totalMonthPayments) * payments + capital * ADMIN_FEE_RATE);
+    }
+
+    static double rawMonthPayment(double capital, int term, double interest) {
+        double monthInterest = monthInterest(interest);
+        int payments = term * 12;
+        return annuityPayment(capital, monthInterest, AnnuityFactorCache.growth(monthInterest, payments));
+    }
+
+    //growth is (1 + monthInterest)^payments, callers that already hold it skip the cache
+    static double annuityPayment(double capital, double monthInterest, double growth) {
+        return (capital * monthInterest * growth) / (growth - 1);
+    }
+
+    //Written as "not over the limit", like the original checks, so a NaN ratio still passes
+    public static boolean incomeQuota(double monthQuote, double income) {
+        return !((monthQuote / income) * 100 > MAX_INCOME_QUOTA);
+    }
+
+    public static boolean debtIncome(double monthDebt, double income) {
+        return !(monthDebt > income * MAX_DEBT_INCOME);
+    }
+
+    //1: solid, 2: needs review, 3: insufficient
+    public static int savingCapacity(double balance, double capital, boolean consistentSaving, boolean periodicSavings,
+                                     boolean seniorityBalance, boolean recentRetirement) {
+        int count = 0;
+        if (consistentSaving) count++;
+        if (periodicSavings) count++;
+        if (seniorityBalance) count++;
+        if (!recentRetirement) count++;
+        if (balance >= capital * 0.1) count++;
+        if (count == 5) return 1;
+        if (count == 3 || count == 4) return 2;
+        return 3;
+    }
+
+    //Loan types: 1 first home, 2 second home, 3 commercial properties, 4 remodeling
+    public static boolean maxCapital(double capital, double propCost, int loanType) {
+        double maxCapital;
+        switch (loanType) {
+            case 1:
+                maxCapital = propCost * 0.8;
+                break;
+            case 2:
+                maxCapital = propCost * 0.7;
+                break;
+            case 3:
+                maxCapital = propCost * 0.6;
+                break;
+            case 4:
+                maxCapital = propCost * 0.5;
+                break;
+            default:
+                return false;
+        }
+        return maxCapital >= capital;
+    }
+
+    //Rounded through whole cents held in a long
+    public static double roundCents(double amount) {
+        return Math.round(amount * 100.0) / 100.0;
+    }
+
+    public static double roundUnits(double amount) {
+        return (double) Math.round(amount);
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Config.MetricsConfig;
+import com.example.backend_martin_gamboa.Dto.LoanScoringStatus;
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import com.example.backend_martin_gamboa.Entity.LoanScoreEntity;
+import com.example.backend_martin_gamboa.Repository.LoanRepository;
+import com.example.backend_martin_gamboa.Repository.LoanScoreRepository;
+import com.example.backend_martin_gamboa.Repository.UserDebt;
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * Scores every loan of the evaluation queue against maxCapital, incomeQuota and debtIncome in the background.
+ * The queue is read in keyset chunks, each chunk is scored on a work stealing pool and replaces its rows of loan_score
+ * in one transaction, readers always see a complete score. Scores of loans that left the queue are only removed once
+ * the whole job succeeded. Only one job runs at a time, the last one can be followed through its status.
+ */
+@Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, histogram = true)
+public class LoanScoringService {
+    private static final String INSERT_SCORE = "insert into loan_score (loan_id, user_id, max_capital, month_quote, month_debt, "
+            + "min_income_quota, min_income_debt, scored_date) values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final LoanService loanService;
+    private final LoanRepository loanRepository;
+    private final LoanScoreRepository loanScoreRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final ExecutorService jobRunner;
+    private final ForkJoinPool scoringPool;
+    private final AtomicReference<Job> lastJob = new AtomicReference<>();
+
+    public LoanScoringService(LoanService loanService, LoanRepository loanRepository, LoanScoreRepository loanScoreRepository,
+                              JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              @Value("${loan.scoring.chunk-size:1000}") int chunkSize,
+                              @Value("${loan.scoring.parallelism:0}") int parallelism) {
+        this.loanService = loanService;
+        this.loanRepository = loanRepository;
+        this.loanScoreRepository = loanScoreRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.min(chunkSize, LoanService.MAX_PAGE_SIZE);
+        this.scoringPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.jobRunner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loan-scoring");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        scoringPool.shutdownNow();
+    }
+
+    //Starts a new job, or returns null if one is already running
+    public LoanScoringStatus startJob() {
+        Job job = new Job();
+        Job previous = lastJob.get();
+        if ((previous != null && previous.finishedDate == null) || !lastJob.compareAndSet(previous, job)) {
+            return null;
+        }
+        jobRunner.execute(() -> run(job));
+        return job.status();
+    }
+
+    //Status of the last job, null if none was started
+    public LoanScoringStatus getStatus() {
+        Job job = lastJob.get();
+        return job == null ? null : job.status();
+    }
+
+    public LoanScoreEntity getScore(Long loanId) {
+        return loanScoreRepository.findById(loanId).orElse(null);
+    }
+
+    void run(Job job) {
+        try {
+            job.total = loanRepository.countByStatusNotIn(LoanService.NOT_FOR_EVALUATION);
+            Long after = null;
+            List<LoanEntity> chunk;
+            do {
+                chunk = loanService.getLoansForEvaluate(after, chunkSize, false);
+                if (chunk.isEmpty()) break;
+                writeScores(scoreChunk(chunk));
+                job.processed.addAndGet(chunk.size());
+                after = chunk.get(chunk.size() - 1).getId();
+            } while (chunk.size() == chunkSize);
+            //Every loan still in the queue was scored by this job, older rows belong to loans that left it
+            jdbcTemplate.update("delete from loan_score where scored_date < ?", new Timestamp(job.startedDate.getTime()));
+            job.state = "COMPLETED";
+        } catch (RuntimeException e) {
+            job.error = e.getMessage();
+            job.state = "FAILED";
+        } finally {
+            job.finishedDate = new Date();
+        }
+    }
+
+    ScoredChunk scoreChunk(List<LoanEntity> loans) {
+        Map<Long, Double> debts = userDebts(loans);
+        ScoredChunk scored = new ScoredChunk(loans);
+        //Each loan only writes its own slot, the pool splits the range among its workers
+        scoringPool.submit(() -> IntStream.range(0, loans.size()).parallel().forEach(i -> {
+            LoanEntity loan = loans.get(i);
+            Double quote = loan.getMonthQuote();
+            double debt = debts.getOrDefault(loan.getUserId(), 0.0);
+            //The kernel directly, the @Timed service would record one sample per loan
+            scored.maxCapital[i] = loan.getCapital() != null && loan.getPropCost() != null && loan.getLoantype() != null
+                    && LoanMath.maxCapital(loan.getCapital(), loan.getPropCost(), loan.getLoantype());
+            scored.monthDebt[i] = debt;
+            //incomeQuota passes while quote / income * 100 <= 35, debtIncome while debt <= income * 0.5
+            scored.minIncomeQuota[i] = quote == null ? Double.NaN : quote * 100 / LoanMath.MAX_INCOME_QUOTA;
+            scored.minIncomeDebt[i] = debt / LoanMath.MAX_DEBT_INCOME;
+        })).join();
+        return scored;
+    }
+
+    private Map<Long, Double> userDebts(List<LoanEntity> loans) {
+        Set<Long> userIds = new HashSet<>();
+        for (LoanEntity loan : loans) {
+            if (loan.getUserId() != null) userIds.add(loan.getUserId());
+        }
+        Map<Long, Double> debts = new HashMap<>();
+        if (userIds.isEmpty()) return debts;
+        for (UserDebt debt : loanRepository.sumMonthQuoteByUserIdInAndStatusNotIn(userIds, LoanService.INACTIVE)) {
+            debts.put(debt.getUserId(), debt.getDebt());
+        }
+        return debts;
+    }
+
+    private void writeScores(ScoredChunk scored) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Long> loanIds = scored.loans.stream().map(LoanEntity::getId).toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            loanScoreRepository.deleteAllByIdInBatch(loanIds);
+            jdbcTemplate.batchUpdate(INSERT_SCORE, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    LoanEntity loan = scored.loans.get(i);
+                    ps.setLong(1, loan.getId());
+                    setNullable(ps, 2, loan.getUserId(), Types.BIGINT);
+                    ps.setBoolean(3, scored.maxCapital[i]);
+                    setNullable(ps, 4, loan.getMonthQuote(), Types.DOUBLE);
+                    ps.setDouble(5, scored.monthDebt[i]);
+                    if (Double.isNaN(scored.minIncomeQuota[i])) ps.setNull(6, Types.DOUBLE);
+                    else ps.setDouble(6, scored.minIncomeQuota[i]);
+                    ps.setDouble(7, scored.minIncomeDebt[i]);
+                    ps.setTimestamp(8, now);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return scored.loans.size();
+                }
+            });
+        });
+    }
+
+    private static void setNullable(PreparedStatement ps, int index, Object value, int sqlType) throws SQLException {
+        if (value == null) ps.setNull(index, sqlType);
+        else ps.setObject(index, value, sqlType);
+    }
+
+    //Scores of a chunk, slot i belongs to loans.get(i)
+    static final class ScoredChunk {
+        final List<LoanEntity> loans;
+        final boolean[] maxCapital;
+        final double[] monthDebt;
+        final double[] minIncomeQuota; //NaN when the loan has no quote
+        final double[] minIncomeDebt;
+
+        ScoredChunk(List<LoanEntity> loans) {
+            this.loans = loans;
+            this.maxCapital = new boolean[loans.size()];
+            this.monthDebt = new double[loans.size()];
+            this.minIncomeQuota = new double[loans.size()];
+            this.minIncomeDebt = new double[loans.size()];
+        }
+    }
+
+    static final class Job {
+        final String id = UUID.randomUUID().toString();
+        final Date startedDate = new Date();
+        final AtomicLong processed = new AtomicLong();
+        volatile long total;
+        volatile String state = "RUNNING";
+        volatile String error;
+        volatile Date finishedDate;
+
+        LoanScoringStatus status() {
+            return new LoanScoringStatus(id, state, total, processed.get(), startedDate, finishedDate, error);
+        }
+    }
+}
@@ -1,20 +1,54 @@
 package com.example.backend_martin_gamboa.Service;
 
+import com.example.backend_martin_gamboa.Config.MetricsConfig;
 import com.example.backend_martin_gamboa.Entity.LoanEntity;
 import com.example.backend_martin_gamboa.Repository.LoanRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, histogram = true)
 public class LoanService {
     @Autowired
     LoanRepository loanRepository;
+    @PersistenceContext
+    EntityManager entityManager;
+
+    static final List<Integer> NOT_FOR_EVALUATION = List.of(2, 7, 8);
+    static final List<Integer> INACTIVE = List.of(7, 8); //Rejected and cancelled loans are not debt
+    final UserDebtCache debtCache = new UserDebtCache();
+    public static final int MAX_PAGE_SIZE = 1000;
 
     public List<LoanEntity> getAllLoans() { return loanRepository.findAll(); }
 
+    //Next page of loans after the given id (null for the first page)
+    public List<LoanEntity> getLoans(Long after, int limit){
+        return loanRepository.findByIdGreaterThan(after == null ? 0L : after, PageRequest.of(0, Math.min(limit, MAX_PAGE_SIZE), Sort.by("id")));
+    }
+
+    //Hands every loan to the action while they are read, each one is detached after it so memory does not grow
+    @Transactional(readOnly = true)
+    public void forEachLoan(Consumer<LoanEntity> action){
+        try (Stream<LoanEntity> loans = loanRepository.streamAllByOrderById()) {
+            loans.forEach(loan -> {
+                action.accept(loan);
+                entityManager.detach(loan);
+            });
+        }
+    }
+
     public LoanEntity getLoanById(Long id) {return loanRepository.findById(id).orElse(null); }
 
     public List<LoanEntity> getLoanByCapital(Double capital){ return loanRepository.findByCapital(capital); }
@@ -23,33 +57,55 @@ public class LoanService {
 
     public List<LoanEntity> getLoanByTerm(Integer term){ return loanRepository.findByTerm(term); }
 
+    //Completes the fee, the month quote and the total in memory, the loan is stored with a single insert
+    @Transactional
     public LoanEntity createLoan(LoanEntity loan){
         if(loan == null) return null;
-        if(loan.getMonthFee() == null){
-            loan.setMonthFee(loan.getCapital()*0.01);
+        if(loan.getMonthFee() == null && loan.getCapital() != null){
+            loan.setMonthFee(loan.getCapital()*LoanMath.ADMIN_FEE_RATE);
         }
+        if(loan.getCapital() != null && loan.getTerm() != null && loan.getInterest() != null){
+            loan.setMonthQuote(monthTotalPayments(loan));
+            loan.setTotal(totalPayments(loan));
+        }
+        debtCache.evictAfterCommit(loan.getUserId());
         return loanRepository.save(loan);
     }
 
+    //The whole loan is saved, so any of its fields may change, like in updateLoan
+    @Transactional
     public LoanEntity updateTotal(LoanEntity loan){
         loan.setTotal(totalPayments(loan.getId()));
+        evictDebts(loan);
         return loanRepository.save(loan);
     }
 
+    @Transactional
     public LoanEntity updateMonthQuote(LoanEntity loan){
         loan.setMonthQuote(monthTotalPayments(loan));
+        evictDebts(loan);
         return loanRepository.save(loan);
     }
 
+    @Transactional
     public LoanEntity updateLoan(LoanEntity loan){
         if(loan == null){
             return null;
         }
+        evictDebts(loan);
         return loanRepository.save(loan);
     }
 
+    //The loan may have moved to another user, both debts change
+    private void evictDebts(LoanEntity loan){
+        Long previousUserId = loan.getId() == null ? null : loanRepository.findById(loan.getId()).map(LoanEntity::getUserId).orElse(null);
+        debtCache.evictAfterCommit(previousUserId, loan.getUserId());
+    }
+
+    @Transactional
     public Boolean deleteLoan(Long id) throws Exception {
         try{
+            loanRepository.findById(id).ifPresent(loan -> debtCache.evictAfterCommit(loan.getUserId()));
             loanRepository.deleteById(id);
             return true;
         } catch (Exception e){
@@ -58,47 +114,42 @@ public class LoanService {
     }
 
     public Double simulateLoan(Double capital, Integer term, Double interest){
-        Double monthInterest = (interest/12)/100;
-        Integer payments = term*12;
-        Double Result = (capital*monthInterest*Math.pow(1+monthInterest, payments))/((Math.pow(1+monthInterest, payments)) - 1);
-        Result = Math.round(Result * 100.0) / 100.0;
-        return Result;
+        return LoanMath.monthPayment(capital, term, interest);
     }
 
-    public Double totalPayments(Long loanId){
+    //Monthly payment of every scenario of the batch, in the same order, computed on the common fork-join pool
+    public double[] simulateLoans(LoanSimulationBatch batch){
+        return batch.simulate(ForkJoinPool.commonPool());
+    }
+
+    //Monthly payments of the capital for every combination of rate and term, in one pass
+    public SensitivityGrid simulateGrid(Double capital, Double rateFrom, Double rateStep, Integer rateCount, Integer termFrom, Integer termTo){
+        return SensitivityGrid.of(capital, rateFrom, rateStep, rateCount, termFrom, termTo);
+    }
+
+    //Month by month schedule of a stored loan, null if the loan does not exist or is incomplete
+    public AmortizationSchedule amortizationSchedule(Long loanId){
         LoanEntity loan = getLoanById(loanId);
-        if (loan == null) return null;
+        if (loan == null || loan.getCapital() == null || loan.getTerm() == null || loan.getInterest() == null) return null;
+        return AmortizationSchedule.of(loan.getCapital(), loan.getTerm(), loan.getInterest());
+    }
+
+    public AmortizationSchedule simulateSchedule(Double capital, Integer term, Double interest){
+        return AmortizationSchedule.of(capital, term, interest);
+    }
 
-        Double capital = loan.getCapital();
-        Integer term = loan.getTerm();
-        Double interest = loan.getInterest();
-        Double monthInterest = (interest / 12) / 100;
-        Integer payments = term * 12;
-        Double monthPayment = (capital * monthInterest * Math.pow(1 + monthInterest, payments)) /
-                (Math.pow(1 + monthInterest, payments) - 1);
-        Double deductionSure = capital * 0.0003;
-        Double fireSure = 20000.0;
-        Double adminFee = capital * 0.01;
-        Double totalMonthPayments = monthPayment + deductionSure + fireSure;
-        Double totalPayments = (double) Math.round(totalMonthPayments) * payments + adminFee;
-        totalPayments = (double) Math.round(totalPayments);
-        return totalPayments;
+    public Double totalPayments(Long loanId){
+        return totalPayments(getLoanById(loanId));
+    }
+
+    public Double totalPayments(LoanEntity loan){
+        if (loan == null) return null;
+        return LoanMath.totalPayments(loan.getCapital(), loan.getTerm(), loan.getInterest());
     }
 
     public Double monthTotalPayments(LoanEntity loan){
         if(loan == null) return null;
-        Double capital = loan.getCapital();
-        Integer term = loan.getTerm();
-        Double interest = loan.getInterest();
-        Double monthInterest = (interest / 12) / 100;
-        Integer payments = term * 12;
-        Double monthPayment = (capital * monthInterest * Math.pow(1 + monthInterest, payments)) /
-                (Math.pow(1 + monthInterest, payments) - 1);
-        Double deductionSure = capital * 0.0003;
-        Double fireSure = 20000.0;
-        Double totalMonthPayments = monthPayment + deductionSure + fireSure;
-        totalMonthPayments = (double) Math.round(totalMonthPayments);
-        return totalMonthPayments;
+        return LoanMath.monthTotalPayment(loan.getCapital(), loan.getTerm(), loan.getInterest());
     }
 
     public Integer consultLoanStateInt(Long loanId){
@@ -108,102 +159,70 @@ public class LoanService {
     }
 
     public Boolean incomeQuota(Long id, Double income){
-        LoanEntity loan = getLoanById(id);
-        if(loan == null) return false;
-        Double monthQuota = loan.getMonthQuote();
-        Double incomeQuota = (monthQuota/income)*100;
-        if(incomeQuota > 35){
-            return false;
-        }
-        return true;
+        return incomeQuota(getLoanById(id), income);
+    }
+
+    public Boolean incomeQuota(LoanEntity loan, Double income){
+        if(loan == null || loan.getMonthQuote() == null) return false;
+        return LoanMath.incomeQuota(loan.getMonthQuote(), income);
     }
 
     public Boolean debtIncome(Long userId, Double income){
-        List<LoanEntity> loans = loanRepository.findByUserId(userId);
-        Double totalDebt = 0.0;
-        for(LoanEntity loan : loans){
-            totalDebt = totalDebt + loan.getMonthQuote();
-        }
-        Double threshold = income*0.5;
-        if(totalDebt > threshold){
-            return false;
-        }
-        return true;
+        return LoanMath.debtIncome(monthDebt(userId), income);
     }
 
-    public Integer savingCapacity(Double balance, Long loanId, Boolean consistenSaving, Boolean periodicSavings, Boolean seniorityBalance, Boolean recentRetirement){
-        LoanEntity loan = getLoanById(loanId);
-        Double capital = loan.getCapital()*0.1;
-        Integer count = 0;
-        if(consistenSaving){
-            count += 1;
-        }
-        if(periodicSavings){
-            count += 1;
-        }
-        if(seniorityBalance){
-            count += 1;
-        }
-        if(!recentRetirement){
-            count += 1;
-        }
-        if(balance >= capital){
-            count += 1;
-        }
+    //Sum of the month quotes of the user's active loans, cached until one of them changes
+    public double monthDebt(Long userId){
+        return debtCache.get(userId, () -> {
+            Double debt = loanRepository.sumMonthQuoteByUserIdAndStatusNotIn(userId, INACTIVE);
+            return debt == null ? 0.0 : debt;
+        });
+    }
 
-        if(count == 5){
-            return 1;
-        }
-        else if (count == 3 || count == 4) {
-            return 2;
-        }
-        return 3;
+    public Integer savingCapacity(Double balance, Long loanId, Boolean consistenSaving, Boolean periodicSavings, Boolean seniorityBalance, Boolean recentRetirement){
+        return savingCapacity(balance, getLoanById(loanId), consistenSaving, periodicSavings, seniorityBalance, recentRetirement);
+    }
 
+    public Integer savingCapacity(Double balance, LoanEntity loan, Boolean consistenSaving, Boolean periodicSavings, Boolean seniorityBalance, Boolean recentRetirement){
+        return LoanMath.savingCapacity(balance, loan.getCapital(), consistenSaving, periodicSavings, seniorityBalance, recentRetirement);
     }
 
+    @Transactional
     public LoanEntity updateState(LoanEntity loan, Integer state){
         if(loan == null) return null;
         loan.setStatus(state);
+        debtCache.evictAfterCommit(loan.getUserId());
         return loanRepository.save(loan);
     }
 
     public Boolean maxCapital(Long loanId){
-        LoanEntity loan = getLoanById(loanId);
-        if(loan == null) return false;
-        Double capital = loan.getCapital();
-        Double propCost = loan.getPropCost();
-        Integer loanType = loan.getLoantype();
-        Double maxCapital = 0.0;
-        switch (loanType){
-            case 1:
-                maxCapital = propCost*0.8;
-                break;
-            case 2:
-                maxCapital = propCost*0.7;
-                break;
-            case 3:
-                maxCapital = propCost*0.6;
-                break;
-            case 4:
-                maxCapital = propCost*0.5;
-                break;
-            default:
-                return false;
-        }
-        return maxCapital >= capital;
+        return maxCapital(getLoanById(loanId));
     }
 
-    public List<LoanEntity> getLoansForEvaluate(){
-        List<LoanEntity> loans = loanRepository.findAll();
-        Iterator<LoanEntity> iterator = loans.iterator();
+    public Boolean maxCapital(LoanEntity loan){
+        if(loan == null || loan.getCapital() == null || loan.getPropCost() == null || loan.getLoantype() == null) return false;
+        return LoanMath.maxCapital(loan.getCapital(), loan.getPropCost(), loan.getLoantype());
+    }
 
-        while (iterator.hasNext()) {
-            LoanEntity loan = iterator.next();
-            if (loan.getStatus() == 2 || loan.getStatus() == 7 || loan.getStatus() == 8) {
-                iterator.remove();
-            }
+    //Next page of the loans an executive can evaluate, after the given id (null for the first page)
+    public List<LoanEntity> getLoansForEvaluate(Long after, int limit, boolean descending){
+        Pageable page = PageRequest.of(0, Math.min(limit, MAX_PAGE_SIZE), descending ? Sort.by("id").descending() : Sort.by("id"));
+        if(descending){
+            return loanRepository.findByStatusNotInAndIdLessThan(NOT_FOR_EVALUATION, after == null ? Long.MAX_VALUE : after, page);
+        }
+        return loanRepository.findByStatusNotInAndIdGreaterThan(NOT_FOR_EVALUATION, after == null ? 0L : after, page);
+    }
+
+    //The whole evaluation queue ordered by id, detached loan by loan like forEachLoan
+    @Transactional(readOnly = true)
+    public void forEachLoanForEvaluate(boolean descending, Consumer<LoanEntity> action){
+        Sort order = descending ? Sort.by("id").descending() : Sort.by("id");
+        try (Stream<LoanEntity> loans = loanRepository.streamByStatusNotIn(NOT_FOR_EVALUATION, order)) {
+            loans.forEach(loan -> {
+                action.accept(loan);
+                entityManager.detach(loan);
+            });
         }
-        return loans;
     }
 
     public List<LoanEntity> getUserLoans(Long userId){
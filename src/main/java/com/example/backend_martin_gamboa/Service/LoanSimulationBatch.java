@@ -0,0 +1,129 @@
+package com.example.backend_martin_gamboa.Service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Many (capital, term, interest) scenarios in primitive columns, evaluated in parallel with the simulateLoan formula.
+//Results keep the order of the input.
+public final class LoanSimulationBatch {
+    public static final int MAX_SIZE = 100000;
+    static final int SPLIT_THRESHOLD = 1024; //Scenarios below this are computed by a single task
+
+    private final double[] capital;
+    private final int[] term;
+    private final double[] interest;
+
+    private LoanSimulationBatch(int size) {
+        this.capital = new double[size];
+        this.term = new int[size];
+        this.interest = new double[size];
+    }
+
+    //Each row is [capital, term, interest]
+    public static LoanSimulationBatch fromRows(double[][] rows) {
+        if (rows == null) {
+            throw new IllegalArgumentException("No se recibieron simulaciones");
+        }
+        checkSize(rows.length);
+        LoanSimulationBatch batch = new LoanSimulationBatch(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            double[] row = rows[i];
+            if (row == null || row.length != 3 || row[1] != Math.rint(row[1])) {
+                throw new IllegalArgumentException("La simulación " + i + " debe ser [capital, plazo, interés]");
+            }
+            batch.set(i, row[0], (int) row[1], row[2]);
+        }
+        return batch;
+    }
+
+    //One "capital,term,interest" line per scenario, a header line is allowed
+    public static LoanSimulationBatch fromCsv(String csv) {
+        if (csv == null) {
+            throw new IllegalArgumentException("No se recibieron simulaciones");
+        }
+        String[] lines = csv.split("\r?\n");
+        int first = 0;
+        if (lines.length > 0 && !lines[0].isBlank() && !isNumberStart(lines[0].trim().charAt(0))) {
+            first = 1;
+        }
+        int size = 0;
+        for (int i = first; i < lines.length; i++) {
+            if (!lines[i].isBlank()) size++;
+        }
+        checkSize(size);
+        LoanSimulationBatch batch = new LoanSimulationBatch(size);
+        int index = 0;
+        for (int i = first; i < lines.length; i++) {
+            if (lines[i].isBlank()) continue;
+            String[] fields = lines[i].split(",");
+            try {
+                if (fields.length != 3) throw new NumberFormatException();
+                batch.set(index, Double.parseDouble(fields[0].trim()), Integer.parseInt(fields[1].trim()), Double.parseDouble(fields[2].trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Línea " + (i + 1) + " inválida, se esperaba capital,plazo,interés");
+            }
+            index++;
+        }
+        return batch;
+    }
+
+    private static boolean isNumberStart(char c) {
+        return Character.isDigit(c) || c == '-' || c == '.' || c == '+';
+    }
+
+    private static void checkSize(int size) {
+        if (size == 0) {
+            throw new IllegalArgumentException("No se recibieron simulaciones");
+        }
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Se permiten como máximo " + MAX_SIZE + " simulaciones por solicitud");
+        }
+    }
+
+    private void set(int i, double capital, int term, double interest) {
+        //Same limit as the schedule and the grid, bigger terms overflow term * 12
+        if (term <= 0 || term > LoanMath.MAX_TERM) {
+            throw new IllegalArgumentException("El plazo de la simulación " + i + " debe estar entre 1 y " + LoanMath.MAX_TERM + " años");
+        }
+        this.capital[i] = capital;
+        this.term[i] = term;
+        this.interest[i] = interest;
+    }
+
+    public int size() {
+        return capital.length;
+    }
+
+    //Monthly payment of every scenario, result[i] belongs to the i-th input
+    public double[] simulate(ForkJoinPool pool) {
+        double[] result = new double[size()];
+        pool.invoke(new SimulateTask(this, result, 0, result.length));
+        return result;
+    }
+
+    private static final class SimulateTask extends RecursiveAction {
+        private final LoanSimulationBatch batch;
+        private final double[] result;
+        private final int from;
+        private final int to;
+
+        SimulateTask(LoanSimulationBatch batch, double[] result, int from, int to) {
+            this.batch = batch;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    result[i] = LoanMath.monthPayment(batch.capital[i], batch.term[i], batch.interest[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SimulateTask(batch, result, from, middle), new SimulateTask(batch, result, middle, to));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.backend_martin_gamboa.Service;
+
+//Monthly payments of one capital over a range of anual interests (rows) and terms in years (columns).
+//The payload is columnar: quotes[rate * terms.length + term] is the payment for rates[rate] and terms[term].
+public final class SensitivityGrid {
+    public static final int MAX_RATES = 1000;
+
+    private final double capital;
+    private final double[] rates;
+    private final int[] terms;
+    private final double[] quotes;
+
+    private SensitivityGrid(double capital, double[] rates, int[] terms, double[] quotes) {
+        this.capital = capital;
+        this.rates = rates;
+        this.terms = terms;
+        this.quotes = quotes;
+    }
+
+    //rateCount interests starting at rateFrom every rateStep points, terms from termFrom to termTo years
+    public static SensitivityGrid of(double capital, double rateFrom, double rateStep, int rateCount, int termFrom, int termTo) {
+        if (rateCount <= 0 || rateCount > MAX_RATES) {
+            throw new IllegalArgumentException("La cantidad de tasas debe estar entre 1 y " + MAX_RATES);
+        }
+        if (termFrom <= 0 || termTo < termFrom || termTo > LoanMath.MAX_TERM) {
+            throw new IllegalArgumentException("Los plazos deben estar entre 1 y " + LoanMath.MAX_TERM + " años");
+        }
+        if (rateFrom <= 0 || rateStep < 0) {
+            throw new IllegalArgumentException("Las tasas deben ser mayores a 0");
+        }
+        double[] rates = new double[rateCount];
+        int[] terms = new int[termTo - termFrom + 1];
+        double[] quotes = new double[rates.length * terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            terms[t] = termFrom + t;
+        }
+        for (int r = 0; r < rates.length; r++) {
+            double rate = Math.round((rateFrom + r * rateStep) * 1e6) / 1e6; //1.0 + 2 * 0.1 is 1.2 and not 1.2000000000000002
+            rates[r] = rate;
+            double monthInterest = LoanMath.monthInterest(rate);
+            int row = r * terms.length;
+            for (int t = 0; t < terms.length; t++) {
+                //Same power and formula as simulateLoan, so every cell is equal to it to the last bit.
+                //Math.pow is called directly, a big grid would otherwise push every loan rate out of the shared cache
+                double growth = Math.pow(1 + monthInterest, terms[t] * 12);
+                quotes[row + t] = LoanMath.roundCents(LoanMath.annuityPayment(capital, monthInterest, growth));
+            }
+        }
+        return new SensitivityGrid(capital, rates, terms, quotes);
+    }
+
+    public double getCapital() { return capital; }
+
+    public double[] getRates() { return rates; }
+
+    public int[] getTerms() { return terms; }
+
+    public double[] getQuotes() { return quotes; }
+}
@@ -0,0 +1,59 @@
+package com.example.backend_martin_gamboa.Service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+//Monthly debt of each user (sum of the quotes of the active loans), kept in memory between loan changes.
+//A change to a loan drops the debt of its user once the transaction commits, and the next check loads it again.
+//Every drop moves the epoch, so a value read from the database while a change was committing is never stored.
+final class UserDebtCache {
+    private final ConcurrentHashMap<Long, Double> debts = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    //Cached debt of the user, or the one loaded from the database, which is cached if no change happened meanwhile
+    double get(Long userId, DoubleSupplier load) {
+        Double cached = debts.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long readEpoch = epoch.get();
+        double loaded = load.getAsDouble();
+        debts.compute(userId, (id, current) -> epoch.get() == readEpoch ? loaded : current);
+        return loaded;
+    }
+
+    //The debt of these users is loaded again on its next use
+    void evictAfterCommit(Long... userIds) {
+        afterCommit(() -> {
+            for (Long userId : userIds) {
+                if (userId == null) continue;
+                debts.compute(userId, (id, current) -> {
+                    epoch.incrementAndGet();
+                    return null;
+                });
+            }
+        });
+    }
+
+    void clear() {
+        epoch.incrementAndGet();
+        debts.clear();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,23 +1,53 @@
 package com.example.backend_martin_gamboa.Service;
 
+import com.example.backend_martin_gamboa.Config.MetricsConfig;
 import com.example.backend_martin_gamboa.Entity.UserEntity;
 import com.example.backend_martin_gamboa.Repository.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = MetricsConfig.SERVICE_TIMER, histogram = true)
 public class UserService {
     @Autowired
     UserRepository userRepository;
+    @PersistenceContext
+    EntityManager entityManager;
+
+    public static final int MAX_PAGE_SIZE = 1000;
 
     public List<UserEntity> getAllUsers() { return (ArrayList<UserEntity>) userRepository.findAll(); }
 
+    //Next page of users after the given id (null for the first page)
+    public List<UserEntity> getUsers(Long after, int limit){
+        return userRepository.findByIdGreaterThan(after == null ? 0L : after, PageRequest.of(0, Math.min(limit, MAX_PAGE_SIZE), Sort.by("id")));
+    }
+
+    //Hands every user to the action while they are read, each one is detached after it so memory does not grow
+    @Transactional(readOnly = true)
+    public void forEachUser(Consumer<UserEntity> action){
+        try (Stream<UserEntity> users = userRepository.streamAllByOrderById()) {
+            users.forEach(user -> {
+                action.accept(user);
+                entityManager.detach(user);
+            });
+        }
+    }
+
     public UserEntity getUserById(Long id){return userRepository.findById(id).get(); }
 
     public UserEntity getUserByEmail(String email){ return userRepository.findByEmail(email); }
@@ -65,7 +95,10 @@ public class UserService {
     }
 
     public Integer userAge(Long id){
-        UserEntity user = userRepository.findById(id).orElse(null);
+        return userAge(userRepository.findById(id).orElse(null));
+    }
+
+    public Integer userAge(UserEntity user){
         if(user == null){
             return 0;
         }
@@ -0,0 +1,54 @@
+package com.example.backend_martin_gamboa.Storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Storage for document bytes. The database only keeps the metadata of a document,
+ * the content lives in a BlobStore and is referenced by its storage key.
+ */
+public interface BlobStore {
+
+    /**
+     * Copies the stream into the store using a fixed size buffer, so the whole content
+     * never has to be in memory. The stream is not closed.
+     * Blobs are content addressed: the key is the SHA-256 of the content, so storing the
+     * same bytes twice returns the existing key without writing a second copy.
+     * When compress is true the bytes are kept compressed, open and transferTo always
+     * return the original content.
+     */
+    StoredBlob put(InputStream content, boolean compress) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Writes count bytes of the blob, starting at position, to the target channel and returns
+     * the number of bytes written. Stores that can do better than a buffered copy (for example
+     * FileChannel.transferTo) should override it.
+     */
+    default long transferTo(String key, long position, long count, WritableByteChannel target) throws IOException {
+        try (InputStream in = open(key)) {
+            in.skipNBytes(position);
+            byte[] buffer = new byte[8 * 1024];
+            long written = 0;
+            while (written < count) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, count - written));
+                if (read == -1) {
+                    break;
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    target.write(chunk);
+                }
+                written += read;
+            }
+            return written;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.backend_martin_gamboa.Storage;
+
+import com.example.backend_martin_gamboa.Service.DocumentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * One-off migration of the documents saved before the blob store, which keep their bytes in the old
+ * content column (LONGBLOB) and have no storage key. Each content is streamed into the BlobStore, one row
+ * at a time, and the document gets its metadata. Off by default, with document.legacy-migration.enabled=true
+ * it runs on a background thread after startup, documents not moved yet answer 404 meanwhile.
+ * The column is never dropped here, once the log reports no failures an operator drops it after a backup.
+ */
+@Component
+public class LegacyContentMigration implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(LegacyContentMigration.class);
+
+    private static final String SELECT_PENDING = "select id from document where storage_key is null and content is not null "
+            + "and id > ? order by id limit ?";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    DocumentService documentService;
+
+    @Value("${document.legacy-migration.enabled:false}")
+    boolean enabled;
+    @Value("${document.legacy-migration.batch-size:100}")
+    int batchSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled || !hasContentColumn()) {
+            return;
+        }
+        Thread thread = new Thread(this::migrateAll, "legacy-content-migration");
+        thread.setDaemon(true); //Rows are moved one by one, stopping half way is safe
+        thread.start();
+    }
+
+    void migrateAll() {
+        long start = System.nanoTime();
+        int migrated = 0;
+        int failed = 0;
+        long after = 0;
+        List<Long> ids;
+        while (!(ids = jdbcTemplate.queryForList(SELECT_PENDING, Long.class, after, batchSize)).isEmpty()) {
+            for (Long id : ids) {
+                try {
+                    if (migrate(id)) migrated++;
+                } catch (RuntimeException e) {
+                    //One bad row must not stop the others, it is retried on the next run
+                    failed++;
+                    log.warn("No se pudo migrar el contenido del documento {}", id, e);
+                }
+            }
+            after = ids.get(ids.size() - 1);
+        }
+        String seconds = String.format("%.1f", (System.nanoTime() - start) / 1e9);
+        if (failed > 0) {
+            log.warn("{} documentos migrados y {} con error en {} s, reinicie con la migración activa para reintentar",
+                    migrated, failed, seconds);
+            return;
+        }
+        log.info("{} documentos migrados al almacenamiento en {} s, la columna content ya puede eliminarse "
+                + "(alter table document drop column content) tras respaldar la base", migrated, seconds);
+    }
+
+    private boolean migrate(Long id) {
+        try {
+            return documentService.migrateLegacyContent(id, () -> openContent(id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //The content is read as a stream and handed to the store, it is never held as a byte[].
+    //Every call runs its own query, the stream keeps the connection until it is closed.
+    private InputStream openContent(Long id) throws IOException {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            PreparedStatement statement = connection.prepareStatement("select content from document where id = ?");
+            statement.setLong(1, id);
+            ResultSet rs = statement.executeQuery();
+            InputStream in = rs.next() ? rs.getBinaryStream(1) : null;
+            return new FilterInputStream(in != null ? in : InputStream.nullInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        JdbcUtils.closeResultSet(rs);
+                        JdbcUtils.closeStatement(statement);
+                        DataSourceUtils.releaseConnection(connection, dataSource);
+                    }
+                }
+            };
+        } catch (SQLException e) {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            throw new IOException("No se pudo leer el contenido del documento " + id, e);
+        }
+    }
+
+    private boolean hasContentColumn() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData meta = connection.getMetaData();
+            //Unquoted names are kept in lower case by MySQL and in upper case by H2
+            for (String table : List.of("document", "DOCUMENT")) {
+                try (ResultSet columns = meta.getColumns(connection.getCatalog(), null, table, null)) {
+                    while (columns.next()) {
+                        if ("content".equalsIgnoreCase(columns.getString("COLUMN_NAME"))) return true;
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.backend_martin_gamboa.Storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Default BlobStore, keeps every blob as a file under document.storage.path.
+ * Files are named after the SHA-256 of their content and spread in sub folders
+ * by the first two characters of the key. Compressed blobs are gzip files with
+ * the extra ".gz" extension.
+ */
+@Component
+public class LocalBlobStore implements BlobStore {
+    static final int BUFFER_SIZE = 8 * 1024;
+    private static final String COMPRESSED_SUFFIX = ".gz";
+
+    private final Path root;
+
+    public LocalBlobStore(@Value("${document.storage.path:documents}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public StoredBlob put(InputStream content, boolean compress) throws IOException {
+        Files.createDirectories(root);
+        //The key is only known once the content is hashed, so write to a temporary file first.
+        //A failed upload never leaves a half written blob behind.
+        Path tmp = Files.createTempFile(root, "upload", ".tmp");
+        MessageDigest digest = sha256();
+        long size = 0;
+        try {
+            try (OutputStream out = compress
+                    ? new GZIPOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE)
+                    : Files.newOutputStream(tmp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+            String key = HexFormat.of().formatHex(digest.digest());
+            Path existing = find(key);
+            if (existing != null) {
+                return new StoredBlob(key, size, key, false, Files.size(existing), isCompressed(existing));
+            }
+            Path target = compress ? compressed(key) : resolve(key);
+            Files.createDirectories(target.getParent());
+            long storedSize = Files.size(tmp);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                //Another upload of the same content won the race
+                return new StoredBlob(key, size, key, false, storedSize, compress);
+            }
+            return new StoredBlob(key, size, key, true, storedSize, compress);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        Path compressed = compressed(key);
+        if (Files.exists(compressed)) {
+            return new GZIPInputStream(Files.newInputStream(compressed), BUFFER_SIZE);
+        }
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public long transferTo(String key, long position, long count, WritableByteChannel target) throws IOException {
+        if (Files.exists(compressed(key))) {
+            //Compressed content has to go through the inflater, no zero-copy possible
+            return BlobStore.super.transferTo(key, position, count, target);
+        }
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            long end = Math.min(position + count, channel.size());
+            long current = position;
+            while (current < end) {
+                long sent = channel.transferTo(current, end - current, target);
+                if (sent <= 0) {
+                    break;
+                }
+                current += sent;
+            }
+            return current - position;
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+        Files.deleteIfExists(compressed(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return find(key) != null;
+    }
+
+    Path resolve(String key) {
+        if (key == null || key.length() < 2 || key.contains("/") || key.contains("\\") || key.contains("..")) {
+            throw new IllegalArgumentException("Clave de almacenamiento inválida: " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private Path compressed(String key) {
+        Path raw = resolve(key);
+        return raw.resolveSibling(raw.getFileName() + COMPRESSED_SUFFIX);
+    }
+
+    private Path find(String key) {
+        Path raw = resolve(key);
+        if (Files.exists(raw)) {
+            return raw;
+        }
+        Path compressed = compressed(key);
+        return Files.exists(compressed) ? compressed : null;
+    }
+
+    private static boolean isCompressed(Path path) {
+        return path.getFileName().toString().endsWith(COMPRESSED_SUFFIX);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
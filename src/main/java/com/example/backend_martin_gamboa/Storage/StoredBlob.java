@@ -0,0 +1,15 @@
+package com.example.backend_martin_gamboa.Storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StoredBlob {
+    private String key;
+    private Long size; //bytes of content
+    private String sha256; //hex encoded hash of the content
+    private Boolean created; //false when the same content was already stored
+    private Long storedSize; //bytes used in the store, smaller than size when compressed
+    private Boolean compressed;
+}
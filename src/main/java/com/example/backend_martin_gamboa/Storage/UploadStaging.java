@@ -0,0 +1,68 @@
+package com.example.backend_martin_gamboa.Storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temporary files of the chunked uploads, one per upload session under document.storage.path/uploads.
+ * Chunks are appended as they arrive and the file is streamed into the BlobStore on commit.
+ */
+@Component
+public class UploadStaging {
+    private final Path root;
+
+    public UploadStaging(@Value("${document.storage.path:documents}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize().resolve("uploads");
+    }
+
+    /**
+     * Appends the chunk at the given offset and returns the bytes written. Anything after the
+     * offset (left by a chunk that failed half way) is discarded first, so a chunk can be resent.
+     * Fails once the file would grow past maxSize.
+     */
+    public long append(String sessionId, long offset, InputStream chunk, long maxSize) throws IOException {
+        Files.createDirectories(root);
+        try (FileChannel channel = FileChannel.open(resolve(sessionId), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+            channel.position(offset);
+            OutputStream out = Channels.newOutputStream(channel);
+            byte[] buffer = new byte[LocalBlobStore.BUFFER_SIZE];
+            long written = 0;
+            int read;
+            while ((read = chunk.read(buffer)) != -1) {
+                written += read;
+                if (offset + written > maxSize) {
+                    channel.truncate(offset);
+                    throw new IOException("El archivo es demasiado grande. Tamaño máximo permitido es " + (maxSize / (1024 * 1024)) + " MB.");
+                }
+                out.write(buffer, 0, read);
+            }
+            return written;
+        }
+    }
+
+    public InputStream open(String sessionId) throws IOException {
+        return Files.newInputStream(resolve(sessionId));
+    }
+
+    public void delete(String sessionId) throws IOException {
+        Files.deleteIfExists(resolve(sessionId));
+    }
+
+    private Path resolve(String sessionId) {
+        if (sessionId == null || !sessionId.matches("[0-9a-fA-F-]+")) {
+            throw new IllegalArgumentException("Sesión de carga inválida: " + sessionId);
+        }
+        return root.resolve(sessionId + ".part");
+    }
+}
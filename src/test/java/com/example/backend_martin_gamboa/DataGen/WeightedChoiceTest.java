@@ -0,0 +1,50 @@
+package com.example.backend_martin_gamboa.DataGen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeightedChoiceTest {
+
+    @Test
+    void next_ShouldFollowTheWeights() {
+        // Given
+        WeightedChoice choice = WeightedChoice.parse("1:60, 2:0, 3:30,4:10");
+        SplittableRandom random = new SplittableRandom(42);
+        int[] counts = new int[5];
+
+        // When
+        for (int i = 0; i < 100000; i++) {
+            counts[(int) choice.next(random)]++;
+        }
+
+        // Then
+        assertEquals(0, counts[2]);
+        assertEquals(60000, counts[1], 1000);
+        assertEquals(30000, counts[3], 1000);
+        assertEquals(10000, counts[4], 1000);
+    }
+
+    @Test
+    void next_WithSameSeed_ShouldRepeatTheSequence() {
+        // Given
+        WeightedChoice choice = WeightedChoice.parse("65536:30,262144:40,1048576:30");
+        SplittableRandom first = new SplittableRandom(7);
+        SplittableRandom second = new SplittableRandom(7);
+
+        // When / Then
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(choice.next(first), choice.next(second));
+        }
+    }
+
+    @Test
+    void parse_WithInvalidEntries_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> WeightedChoice.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> WeightedChoice.parse("1:10,2"));
+        assertThrows(IllegalArgumentException.class, () -> WeightedChoice.parse("1:-5"));
+        assertThrows(IllegalArgumentException.class, () -> WeightedChoice.parse("1:0,2:0"));
+    }
+}
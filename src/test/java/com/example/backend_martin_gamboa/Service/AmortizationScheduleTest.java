@@ -0,0 +1,123 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmortizationScheduleTest {
+
+    @Test
+    void of_ShouldPayTheWholeCapital() {
+        // Given
+        double capital = 100000000.0;
+
+        // When
+        AmortizationSchedule schedule = AmortizationSchedule.of(capital, 30, 4.5);
+
+        // Then
+        assertEquals(360, schedule.getPayments());
+        double principal = 0;
+        for (int period = 1; period <= schedule.getPayments(); period++) {
+            principal += schedule.getPrincipal(period);
+            assertEquals(schedule.getMonthPayment(), schedule.getInterest(period) + schedule.getPrincipal(period), 0.01);
+        }
+        assertEquals(capital, principal, 0.01);
+        assertEquals(0.0, schedule.getBalance(360));
+        assertEquals(capital * 0.045 / 12, schedule.getInterest(1), 1e-6);
+    }
+
+    @Test
+    void of_ShouldMatchLoanServiceMonthQuote() {
+        // Given
+        LoanEntity loan = new LoanEntity();
+        loan.setCapital(50000000.0);
+        loan.setTerm(20);
+        loan.setInterest(5.0);
+        LoanService loanService = new LoanService();
+
+        // When
+        AmortizationSchedule schedule = AmortizationSchedule.of(loan.getCapital(), loan.getTerm(), loan.getInterest());
+
+        // Then
+        assertEquals(loanService.monthTotalPayments(loan), (double) Math.round(schedule.getMonthTotal()));
+        assertEquals(loanService.simulateLoan(50000000.0, 20, 5.0), Math.round(schedule.getMonthPayment() * 100.0) / 100.0);
+        assertEquals(15000.0, schedule.getDeductionSure(), 1e-6);
+        assertEquals(20000.0, schedule.getFireSure());
+    }
+
+    @Test
+    void of_ShouldSplitCapitalEvenly_WhenInterestIsZero() {
+        // When
+        AmortizationSchedule schedule = AmortizationSchedule.of(1200.0, 1, 0.0);
+
+        // Then
+        assertEquals(100.0, schedule.getMonthPayment());
+        assertEquals(0.0, schedule.getInterest(1));
+        assertEquals(1100.0, schedule.getBalance(1));
+    }
+
+    @Test
+    void of_ShouldThrow_WhenTermIsNotPositive() {
+        assertThrows(IllegalArgumentException.class, () -> AmortizationSchedule.of(1000.0, 0, 5.0));
+    }
+
+    @Test
+    void of_ShouldThrow_WhenTermIsTooLong() {
+        // A term of 400000000 years would allocate gigabytes, and bigger ones overflow term * 12
+        assertThrows(IllegalArgumentException.class, () -> AmortizationSchedule.of(1000.0, LoanMath.MAX_TERM + 1, 5.0));
+        assertThrows(IllegalArgumentException.class, () -> AmortizationSchedule.of(1000.0, 400000000, 5.0));
+        assertEquals(LoanMath.MAX_TERM * 12, AmortizationSchedule.of(1000.0, LoanMath.MAX_TERM, 5.0).getPayments());
+    }
+
+    @Test
+    void writeTo_ShouldWriteOneJsonLinePerMonth() throws IOException {
+        // Given
+        AmortizationSchedule schedule = AmortizationSchedule.of(1200.0, 1, 0.0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        schedule.writeTo(out, AmortizationSchedule.FORMAT_NDJSON);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(12, lines.length);
+        assertEquals("{\"period\":1,\"payment\":100.00,\"interest\":0.00,\"principal\":100.00,\"deductionSure\":0.36,"
+                + "\"fireSure\":20000.00,\"total\":20100.36,\"balance\":1100.00}", lines[0]);
+        assertTrue(lines[11].endsWith("\"balance\":0.00}"));
+    }
+
+    @Test
+    void writeTo_ShouldWriteCsvWithHeader() throws IOException {
+        // Given
+        AmortizationSchedule schedule = AmortizationSchedule.of(1200.0, 1, 0.0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        schedule.writeTo(out, AmortizationSchedule.FORMAT_CSV);
+
+        // Then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(13, lines.length);
+        assertEquals("period,payment,interest,principal,deductionSure,fireSure,total,balance", lines[0]);
+        assertEquals("12,100.00,0.00,100.00,0.36,20000.00,20100.36,0.00", lines[12]);
+    }
+
+    @Test
+    void appendCents_ShouldPadAndKeepTheSign() {
+        // Given
+        StringBuilder sb = new StringBuilder();
+
+        // When
+        AmortizationSchedule.appendCents(sb, -3.05);
+        sb.append(' ');
+        AmortizationSchedule.appendCents(sb, 7.999);
+
+        // Then
+        assertEquals("-3.05 8.00", sb.toString());
+    }
+}
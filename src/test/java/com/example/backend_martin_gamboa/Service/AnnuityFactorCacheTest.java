@@ -0,0 +1,109 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import com.example.backend_martin_gamboa.Repository.LoanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AnnuityFactorCacheTest {
+
+    @BeforeEach
+    void setUp() {
+        AnnuityFactorCache.clear();
+    }
+
+    @Test
+    void growth_ShouldBeEqualToMathPow_WhenCachedOrNot() {
+        for (int term = 1; term <= 30; term++) {
+            for (double interest = 0.5; interest <= 12; interest += 0.25) {
+                // Given
+                double monthInterest = (interest / 12) / 100;
+                double expected = Math.pow(1 + monthInterest, term * 12);
+
+                // When
+                double first = AnnuityFactorCache.growth(monthInterest, term * 12);
+                double second = AnnuityFactorCache.growth(monthInterest, term * 12);
+
+                // Then
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(first));
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(second));
+            }
+        }
+    }
+
+    @Test
+    void loanServiceResults_ShouldNotChange() {
+        // Given
+        LoanService loanService = new LoanService();
+        loanService.loanRepository = mock(LoanRepository.class);
+        LoanEntity loan = new LoanEntity();
+        loan.setId(1L);
+        when(loanService.loanRepository.findById(1L)).thenReturn(Optional.of(loan));
+
+        for (int term = 1; term <= 30; term += 3) {
+            for (double interest = 1.5; interest <= 9; interest += 0.35) {
+                for (double capital = 1000000; capital <= 300000000; capital *= 3.7) {
+                    loan.setCapital(capital);
+                    loan.setTerm(term);
+                    loan.setInterest(interest);
+
+                    // When
+                    Double simulated = loanService.simulateLoan(capital, term, interest);
+                    Double monthTotal = loanService.monthTotalPayments(loan);
+                    Double total = loanService.totalPayments(1L);
+
+                    // Then
+                    assertEquals(legacySimulateLoan(capital, term, interest), simulated);
+                    assertEquals(legacyMonthTotalPayments(loan), monthTotal);
+                    assertEquals(legacyTotalPayments(loan), total);
+                }
+            }
+        }
+    }
+
+    // The formulas as they were written before the cache
+    private static Double legacySimulateLoan(Double capital, Integer term, Double interest) {
+        Double monthInterest = (interest/12)/100;
+        Integer payments = term*12;
+        Double Result = (capital*monthInterest*Math.pow(1+monthInterest, payments))/((Math.pow(1+monthInterest, payments)) - 1);
+        Result = Math.round(Result * 100.0) / 100.0;
+        return Result;
+    }
+
+    private static Double legacyTotalPayments(LoanEntity loan) {
+        Double capital = loan.getCapital();
+        Integer term = loan.getTerm();
+        Double interest = loan.getInterest();
+        Double monthInterest = (interest / 12) / 100;
+        Integer payments = term * 12;
+        Double monthPayment = (capital * monthInterest * Math.pow(1 + monthInterest, payments)) /
+                (Math.pow(1 + monthInterest, payments) - 1);
+        Double deductionSure = capital * 0.0003;
+        Double fireSure = 20000.0;
+        Double adminFee = capital * 0.01;
+        Double totalMonthPayments = monthPayment + deductionSure + fireSure;
+        Double totalPayments = (double) Math.round(totalMonthPayments) * payments + adminFee;
+        totalPayments = (double) Math.round(totalPayments);
+        return totalPayments;
+    }
+
+    private static Double legacyMonthTotalPayments(LoanEntity loan) {
+        Double capital = loan.getCapital();
+        Integer term = loan.getTerm();
+        Double interest = loan.getInterest();
+        Double monthInterest = (interest / 12) / 100;
+        Integer payments = term * 12;
+        Double monthPayment = (capital * monthInterest * Math.pow(1 + monthInterest, payments)) /
+                (Math.pow(1 + monthInterest, payments) - 1);
+        Double deductionSure = capital * 0.0003;
+        Double fireSure = 20000.0;
+        Double totalMonthPayments = monthPayment + deductionSure + fireSure;
+        totalMonthPayments = (double) Math.round(totalMonthPayments);
+        return totalMonthPayments;
+    }
+}
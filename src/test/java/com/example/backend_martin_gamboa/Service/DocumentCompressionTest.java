@@ -0,0 +1,45 @@
+package com.example.backend_martin_gamboa.Service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentCompressionTest {
+
+    @Test
+    void isWorthCompressing_ShouldAcceptText() {
+        byte[] sample = "%PDF-1.4 Contrato de compraventa, cláusula primera. ".repeat(500).getBytes(StandardCharsets.UTF_8);
+        assertTrue(DocumentCompression.isWorthCompressing(sample));
+    }
+
+    @Test
+    void isWorthCompressing_ShouldSkipKnownCompressedFormats() {
+        byte[] jpeg = new byte[1024];
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        jpeg[2] = (byte) 0xFF;
+        byte[] zip = new byte[1024];
+        zip[0] = 'P';
+        zip[1] = 'K';
+        zip[2] = 0x03;
+        zip[3] = 0x04;
+
+        assertFalse(DocumentCompression.isWorthCompressing(jpeg)); // All zeros after the header, still skipped
+        assertFalse(DocumentCompression.isWorthCompressing(zip));
+    }
+
+    @Test
+    void isWorthCompressing_ShouldSkipRandomData() {
+        byte[] sample = new byte[DocumentCompression.SAMPLE_SIZE];
+        new Random(42).nextBytes(sample);
+        assertFalse(DocumentCompression.isWorthCompressing(sample));
+    }
+
+    @Test
+    void isWorthCompressing_ShouldSkipEmptyContent() {
+        assertFalse(DocumentCompression.isWorthCompressing(new byte[0]));
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Entity.DocumentEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DocumentExportServiceTest {
+
+    @Mock
+    private DocumentService documentService;
+
+    private DocumentExportService documentExportService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        // Documents bigger than 5 bytes are streamed by the writer instead of prefetched, at most 8 bytes are buffered
+        documentExportService = new DocumentExportService(documentService, 2, 2, 5, 8);
+        when(documentService.openDocument(any(DocumentEntity.class))).thenAnswer(invocation -> {
+            DocumentEntity doc = invocation.getArgument(0);
+            return new ByteArrayInputStream(doc.getStorageKey().getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        documentExportService.shutdown();
+    }
+
+    @Test
+    void writeZip_ShouldKeepTheOrderAndUseAFolderPerLoan() throws IOException {
+        // Given
+        List<DocumentEntity> docs = List.of(
+                document(1L, 10L, "dni.pdf", "uno"),
+                document(2L, 10L, "sueldo.pdf", "dos"),
+                document(3L, 11L, "dni.pdf", "contenido largo"), // Streamed, bigger than the prefetch limit
+                document(4L, 12L, "avaluo.pdf", "cua"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        documentExportService.writeZip(docs, true, out);
+
+        // Then
+        List<String> entries = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        readZip(out.toByteArray(), entries, contents);
+        assertEquals(List.of("loan_10/dni.pdf", "loan_10/sueldo.pdf", "loan_11/dni.pdf", "loan_12/avaluo.pdf"), entries);
+        assertEquals(List.of("uno", "dos", "contenido largo", "cua"), contents);
+        verify(documentService, times(4)).openDocument(any(DocumentEntity.class));
+    }
+
+    @Test
+    void writeZip_ShouldStreamInPlaceWhenTheBudgetIsSpent() throws IOException {
+        // Given
+        List<DocumentEntity> docs = List.of(
+                document(1L, 10L, "a.pdf", "uno"),
+                document(2L, 10L, "b.pdf", "dos"),
+                document(3L, 10L, "c.pdf", "tres")); // Only 2 bytes of budget left after the first two
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+
+        // When
+        documentExportService.writeZip(docs, false, first);
+        documentExportService.writeZip(docs, false, second);
+
+        // Then
+        List<String> contents = new ArrayList<>();
+        readZip(first.toByteArray(), new ArrayList<>(), contents);
+        readZip(second.toByteArray(), new ArrayList<>(), contents);
+        assertEquals(List.of("uno", "dos", "tres", "uno", "dos", "tres"), contents);
+    }
+
+    @Test
+    void streamZip_ShouldCopyEveryDocumentInOrder() throws IOException {
+        // Given
+        List<DocumentEntity> docs = List.of(
+                document(1L, 10L, "dni.pdf", "uno"),
+                document(2L, 10L, "dni.pdf", "contenido largo"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        documentExportService.streamZip(docs, out);
+
+        // Then
+        List<String> entries = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        readZip(out.toByteArray(), entries, contents);
+        assertEquals(List.of("dni.pdf", "dni (2).pdf"), entries);
+        assertEquals(List.of("uno", "contenido largo"), contents);
+    }
+
+    @Test
+    void writeZip_ShouldRenameRepeatedNames() throws IOException {
+        // Given
+        List<DocumentEntity> docs = List.of(
+                document(1L, 10L, "dni.pdf", "uno"),
+                document(2L, 10L, "dni.pdf", "dos"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        documentExportService.writeZip(docs, false, out);
+
+        // Then
+        List<String> entries = new ArrayList<>();
+        readZip(out.toByteArray(), entries, new ArrayList<>());
+        assertEquals(List.of("dni.pdf", "dni (2).pdf"), entries);
+    }
+
+    @Test
+    void writeZip_ShouldFailWhenADocumentCannotBeRead() throws IOException {
+        // Given
+        when(documentService.openDocument(any(DocumentEntity.class))).thenThrow(new IOException("sin acceso"));
+        List<DocumentEntity> docs = List.of(document(1L, 10L, "dni.pdf", "uno"));
+
+        // When / Then
+        IOException exception = assertThrows(IOException.class,
+                () -> documentExportService.writeZip(docs, false, new ByteArrayOutputStream()));
+        assertEquals("sin acceso", exception.getMessage());
+    }
+
+    @Test
+    void constructor_ShouldRejectAnEmptyWindowOrPool() {
+        assertThrows(IllegalArgumentException.class, () -> new DocumentExportService(documentService, 2, 0, 5, 8));
+        assertThrows(IllegalArgumentException.class, () -> new DocumentExportService(documentService, 0, 2, 5, 8));
+    }
+
+    @Test
+    void uniqueName_ShouldKeepTheExtension() {
+        Set<String> names = new HashSet<>();
+        assertEquals("a.pdf", DocumentExportService.uniqueName(names, "a.pdf"));
+        assertEquals("a (2).pdf", DocumentExportService.uniqueName(names, "a.pdf"));
+        assertEquals("a (3).pdf", DocumentExportService.uniqueName(names, "a.pdf"));
+        assertEquals("carpeta.1/leeme", DocumentExportService.uniqueName(names, "carpeta.1/leeme"));
+        assertEquals("carpeta.1/leeme (2)", DocumentExportService.uniqueName(names, "carpeta.1/leeme"));
+    }
+
+    private static DocumentEntity document(Long id, Long loanId, String name, String content) {
+        // The storage key doubles as the content in these tests
+        return new DocumentEntity(id, name, 1L, loanId, (long) content.length(), "hash", content, "application/pdf",
+                null, (long) content.length(), false, 0L);
+    }
+
+    private static void readZip(byte[] zip, List<String> entries, List<String> contents) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.add(entry.getName());
+                contents.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -1,20 +1,54 @@
 package com.example.backend_martin_gamboa.Service;
 
 import com.example.backend_martin_gamboa.Entity.DocumentEntity;
+import com.example.backend_martin_gamboa.Entity.UploadSessionEntity;
+import com.example.backend_martin_gamboa.Repository.DocumentBlobRepository;
+import com.example.backend_martin_gamboa.Repository.DocumentMeta;
 import com.example.backend_martin_gamboa.Repository.DocumentRepository;
+import com.example.backend_martin_gamboa.Repository.UploadSessionRepository;
+import com.example.backend_martin_gamboa.Storage.BlobStore;
+import com.example.backend_martin_gamboa.Storage.StoredBlob;
+import com.example.backend_martin_gamboa.Storage.UploadStaging;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class DocumentServiceTest {
@@ -25,15 +59,35 @@ public class DocumentServiceTest {
     @Mock
     private DocumentRepository documentRepository;
 
+    @Mock
+    private DocumentBlobRepository documentBlobRepository;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private UploadStaging uploadStaging;
+
     @Mock
     private MultipartFile mockFile;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private DocumentEntity documentEntity;
 
     @BeforeEach
-    public void setUp() {
+    public void setUp() throws IOException {
         MockitoAnnotations.openMocks(this);
-        documentEntity = new DocumentEntity(1L, "testDocument.pdf", new byte[]{}, 1L, 1L);
+        documentService.transactionTemplate = new TransactionTemplate(transactionManager);
+        when(blobStore.exists(anyString())).thenReturn(true);
+        documentEntity = new DocumentEntity(1L, "testDocument.pdf", 1L, 1L, 3L, "hash", "key", "application/pdf", null, 3L, false, 0L);
     }
 
     @Test
@@ -41,16 +95,16 @@ public class DocumentServiceTest {
         // Given
         Long userId = 1L;
         String docName = "nonExistentDocument.pdf"; // Nombre de documento que no existe
-        List<DocumentEntity> documents = new ArrayList<>();
-        documents.add(new DocumentEntity(1L, "existingDocument.pdf", new byte[]{}, userId, 1L)); // Documento existente diferente
 
         // When
-        when(documentRepository.findByUserId(userId)).thenReturn(documents);
+        when(documentRepository.findFirstByUserIdAndDocNameOrderByIdAsc(userId, "existingDocument.pdf"))
+                .thenReturn(new DocumentEntity(1L, "existingDocument.pdf", userId, 1L, 3L, "hash", "key", "application/pdf", null, 3L, false, 0L)); // Documento existente diferente
 
         DocumentEntity result = documentService.consultDocument(userId, docName);
 
         // Then
         assertNull(result); // Verificamos que el resultado sea null, ya que no se encontró el documento
+        verify(documentRepository, never()).findByUserId(anyLong());
     }
 
     @Test
@@ -60,18 +114,263 @@ public class DocumentServiceTest {
         Long loanId = 1L;
 
         // When
-        when(mockFile.getBytes()).thenReturn(new byte[]{1, 2, 3});
+        when(mockFile.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
         when(mockFile.getSize()).thenReturn(100L);
-        when(documentRepository.save(any(DocumentEntity.class))).thenReturn(documentEntity);
+        when(mockFile.getContentType()).thenReturn("application/pdf");
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", true, 3L, false));
+        when(documentRepository.save(any(DocumentEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         DocumentEntity result = documentService.uploadDocument(mockFile, userId, loanId, "testDocument.pdf");
 
         //Then
         assertNotNull(result);
         assertEquals("testDocument.pdf", result.getDocName());
+        assertEquals("key", result.getStorageKey());
+        assertEquals(3L, result.getContentSize());
+        assertEquals("hash", result.getContentHash());
+        assertEquals("application/pdf", result.getMediaType());
+        verify(mockFile, never()).getBytes();
+        verify(documentBlobRepository, times(1)).insertBlob("key", 3L);
         verify(documentRepository, times(1)).save(any(DocumentEntity.class));
     }
 
+    @Test
+    public void testUploadDocument_SameContentReusesTheBlob() throws IOException {
+        // When
+        when(mockFile.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        when(mockFile.getSize()).thenReturn(100L);
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", false, 3L, false));
+        when(documentBlobRepository.incrementRefCount("key")).thenReturn(1);
+        when(documentRepository.save(any(DocumentEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        DocumentEntity result = documentService.uploadDocument(mockFile, 1L, 2L, "copy.pdf");
+
+        // Then
+        assertEquals("key", result.getStorageKey());
+        verify(documentBlobRepository, never()).insertBlob(anyString(), anyLong());
+    }
+
+    @Test
+    public void testUploadDocument_SavesTheDocumentAndTheReferenceInOneTransaction() throws IOException {
+        // When
+        when(mockFile.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        when(mockFile.getSize()).thenReturn(100L);
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", false, 3L, false));
+        when(documentBlobRepository.incrementRefCount("key")).thenReturn(1);
+        when(documentRepository.save(any(DocumentEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        documentService.uploadDocument(mockFile, 1L, 2L, "copy.pdf");
+
+        // Then
+        InOrder inOrder = inOrder(transactionManager, documentRepository, documentBlobRepository);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(documentRepository).save(any(DocumentEntity.class));
+        inOrder.verify(documentBlobRepository).incrementRefCount("key");
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void testUploadDocument_FailedSave_RollsBackWithoutAReference() throws IOException {
+        // When
+        when(mockFile.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        when(mockFile.getSize()).thenReturn(100L);
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", false, 3L, false));
+        when(documentRepository.save(any(DocumentEntity.class))).thenThrow(new IllegalStateException("db down"));
+
+        // Then
+        assertThrows(IllegalStateException.class, () -> documentService.uploadDocument(mockFile, 1L, 2L, "copy.pdf"));
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verifyNoInteractions(documentBlobRepository);
+    }
+
+    @Test
+    public void testUploadDocument_BlobRegisteredElsewhere_RetriesWithAnIncrement() throws IOException {
+        // When
+        when(mockFile.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        when(mockFile.getSize()).thenReturn(100L);
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", true, 3L, false));
+        when(documentBlobRepository.incrementRefCount("key")).thenReturn(0, 1);
+        when(documentBlobRepository.insertBlob("key", 3L)).thenThrow(new DataIntegrityViolationException("duplicate"));
+        when(documentRepository.save(any(DocumentEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        DocumentEntity result = documentService.uploadDocument(mockFile, 1L, 2L, "copy.pdf");
+
+        // Then
+        assertEquals("key", result.getStorageKey());
+        verify(transactionManager, times(1)).rollback(any());
+        verify(transactionManager, times(1)).commit(any());
+        verify(documentBlobRepository, times(2)).incrementRefCount("key");
+        verify(documentBlobRepository, times(1)).insertBlob("key", 3L);
+    }
+
+    @Test
+    public void testAppendChunk_AppendsInOrder() throws IOException {
+        // Given
+        UploadSessionEntity session = new UploadSessionEntity("abc-1", 1L, 1L, "scan.tiff", null, 1, 100L, new Date());
+        InputStream chunk = new ByteArrayInputStream(new byte[50]);
+        when(uploadSessionRepository.findById("abc-1")).thenReturn(Optional.of(session));
+        when(uploadStaging.append(eq("abc-1"), eq(100L), eq(chunk), anyLong())).thenReturn(50L);
+        when(uploadSessionRepository.save(session)).thenReturn(session);
+
+        // When
+        UploadSessionEntity result = documentService.appendChunk("abc-1", 1, chunk);
+
+        // Then
+        assertEquals(2, result.getNextChunk());
+        assertEquals(150L, result.getReceivedBytes());
+    }
+
+    @Test
+    public void testAppendChunk_RetriedChunkIsIgnored() throws IOException {
+        // Given
+        UploadSessionEntity session = new UploadSessionEntity("abc-1", 1L, 1L, "scan.tiff", null, 2, 100L, new Date());
+        when(uploadSessionRepository.findById("abc-1")).thenReturn(Optional.of(session));
+
+        // When
+        UploadSessionEntity result = documentService.appendChunk("abc-1", 1, new ByteArrayInputStream(new byte[50]));
+
+        // Then
+        assertEquals(2, result.getNextChunk());
+        verify(uploadStaging, never()).append(anyString(), anyLong(), any(InputStream.class), anyLong());
+    }
+
+    @Test
+    public void testAppendChunk_ConcurrentRetryWaitsForTheFirstRequest() throws Exception {
+        // Given
+        UploadSessionEntity session = new UploadSessionEntity("abc-1", 1L, 1L, "scan.tiff", null, 0, 0L, new Date());
+        when(uploadSessionRepository.findById("abc-1")).thenAnswer(invocation -> Optional.of(session));
+        when(uploadSessionRepository.save(session)).thenReturn(session);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(uploadStaging.append(eq("abc-1"), eq(0L), any(InputStream.class), anyLong())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 50L;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When
+            Future<UploadSessionEntity> first = executor.submit(() -> documentService.appendChunk("abc-1", 0, new ByteArrayInputStream(new byte[50])));
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            Future<UploadSessionEntity> retry = executor.submit(() -> documentService.appendChunk("abc-1", 0, new ByteArrayInputStream(new byte[50])));
+            Thread.sleep(100); // The retry is now waiting for the session
+            release.countDown();
+
+            // Then
+            assertEquals(1, first.get(5, TimeUnit.SECONDS).getNextChunk());
+            assertEquals(1, retry.get(5, TimeUnit.SECONDS).getNextChunk());
+            assertEquals(50L, session.getReceivedBytes());
+            verify(uploadStaging, times(1)).append(anyString(), anyLong(), any(InputStream.class), anyLong());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAppendChunk_ChunkOutOfOrder() {
+        // Given
+        UploadSessionEntity session = new UploadSessionEntity("abc-1", 1L, 1L, "scan.tiff", null, 0, 0L, new Date());
+        when(uploadSessionRepository.findById("abc-1")).thenReturn(Optional.of(session));
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> documentService.appendChunk("abc-1", 3, new ByteArrayInputStream(new byte[1])));
+    }
+
+    @Test
+    public void testCommitUploadSession_CreatesDocument() throws IOException {
+        // Given
+        UploadSessionEntity session = new UploadSessionEntity("abc-1", 1L, 2L, "scan.tiff", "image/tiff", 3, 30L, new Date());
+        when(uploadSessionRepository.findById("abc-1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.deleteInBulkById("abc-1")).thenReturn(1);
+        when(uploadStaging.open("abc-1")).thenReturn(new ByteArrayInputStream(new byte[30]));
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 30L, "hash", true, 30L, false));
+        when(documentRepository.save(any(DocumentEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        DocumentEntity result = documentService.commitUploadSession("abc-1");
+
+        // Then
+        assertEquals("scan.tiff", result.getDocName());
+        assertEquals(2L, result.getLoanId());
+        assertEquals(30L, result.getContentSize());
+        assertEquals("image/tiff", result.getMediaType());
+        verify(uploadSessionRepository, times(1)).deleteInBulkById("abc-1");
+        verify(uploadStaging, times(1)).delete("abc-1");
+    }
+
+    @Test
+    public void testCommitUploadSession_AlreadyClaimed_DoesNotSaveTwice() throws IOException {
+        // Given
+        UploadSessionEntity session = new UploadSessionEntity("abc-1", 1L, 2L, "scan.tiff", "image/tiff", 3, 30L, new Date());
+        when(uploadSessionRepository.findById("abc-1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.deleteInBulkById("abc-1")).thenReturn(0); // A concurrent commit deleted it first
+
+        // When
+        DocumentEntity result = documentService.commitUploadSession("abc-1");
+
+        // Then
+        assertNull(result);
+        verifyNoInteractions(blobStore);
+        verify(documentRepository, never()).save(any(DocumentEntity.class));
+        verify(uploadStaging, never()).delete(anyString());
+    }
+
+    @Test
+    public void testCommitUploadSession_FailedSave_GivesTheSessionBack() throws IOException {
+        // Given
+        UploadSessionEntity session = new UploadSessionEntity("abc-1", 1L, 2L, "scan.tiff", "image/tiff", 3, 30L, new Date());
+        when(uploadSessionRepository.findById("abc-1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.deleteInBulkById("abc-1")).thenReturn(1);
+        when(uploadStaging.open("abc-1")).thenThrow(new IOException("sin archivo"));
+
+        // When / Then
+        assertThrows(IOException.class, () -> documentService.commitUploadSession("abc-1"));
+        verify(uploadSessionRepository, times(1)).save(session);
+        verify(uploadStaging, never()).delete(anyString());
+    }
+
+    @Test
+    public void testExpireUploadSessions_DeletesOldSessionsAndTheirFiles() throws IOException {
+        // Given
+        documentService.uploadSessionTtl = Duration.ofHours(24);
+        when(uploadSessionRepository.findIdsCreatedBefore(any(Date.class))).thenReturn(List.of("abc-1", "abc-2"));
+        when(uploadSessionRepository.deleteInBulkById("abc-1")).thenReturn(1);
+        when(uploadSessionRepository.deleteInBulkById("abc-2")).thenReturn(0); // Committed while the sweep ran
+
+        // When
+        int expired = documentService.expireUploadSessions();
+
+        // Then
+        assertEquals(1, expired);
+        verify(uploadStaging, times(1)).delete("abc-1");
+        verify(uploadStaging, never()).delete("abc-2");
+    }
+
+    @Test
+    public void testUploadDocument_CompressesTextContent() throws IOException {
+        // Given
+        byte[] content = "Liquidación de sueldo, ".repeat(2000).getBytes(StandardCharsets.UTF_8);
+        when(mockFile.getInputStream()).thenReturn(new ByteArrayInputStream(content));
+        when(mockFile.getSize()).thenReturn((long) content.length);
+        when(blobStore.put(any(InputStream.class), eq(true))).thenAnswer(invocation -> {
+            byte[] stored = invocation.getArgument(0, InputStream.class).readAllBytes();
+            assertArrayEquals(content, stored); // The sniffed prefix is not lost
+            return new StoredBlob("key", (long) stored.length, "hash", true, 900L, true);
+        });
+        when(documentRepository.save(any(DocumentEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        DocumentEntity result = documentService.uploadDocument(mockFile, 1L, 1L, "liquidacion.txt");
+
+        // Then
+        assertTrue(result.getCompressed());
+        assertEquals(900L, result.getStoredSize());
+        assertEquals((long) content.length, result.getContentSize());
+        assertNotNull(result.getStoreCpuNanos());
+    }
+
     @Test
     public void testUploadDocument_FileIsEmpty() throws IOException {
         //Given
@@ -109,12 +408,8 @@ public class DocumentServiceTest {
 
     @Test
     public void testConsultDocument_Success() {
-        // Given
-        List<DocumentEntity> documents = new ArrayList<>();
-        documents.add(documentEntity);
-
         // When
-        when(documentRepository.findByUserId(1L)).thenReturn(documents);
+        when(documentRepository.findFirstByUserIdAndDocNameOrderByIdAsc(1L, "testDocument.pdf")).thenReturn(documentEntity);
 
         DocumentEntity result = documentService.consultDocument(1L, "testDocument.pdf");
         //Then
@@ -125,8 +420,7 @@ public class DocumentServiceTest {
     @Test
     public void testConsultDocument_NotFound() {
         // Given
-        List<DocumentEntity> documents = new ArrayList<>();
-        when(documentRepository.findByUserId(1L)).thenReturn(documents);
+        when(documentRepository.findFirstByUserIdAndDocNameOrderByIdAsc(1L, "testDocument.pdf")).thenReturn(null);
 
         // When
         DocumentEntity result = documentService.consultDocument(1L, "testDocument.pdf");
@@ -135,6 +429,36 @@ public class DocumentServiceTest {
         assertNull(result);
     }
 
+    @Test
+    public void testConsultUserDocuments_ReturnsMetadata() {
+        // Given
+        DocumentMeta meta = mock(DocumentMeta.class);
+        when(meta.getDocName()).thenReturn("testDocument.pdf");
+        when(documentRepository.findMetaByUserIdOrderByIdAsc(1L)).thenReturn(List.of(meta));
+
+        // When
+        List<DocumentMeta> result = documentService.consultUserDocuments(1L);
+
+        //Then
+        assertEquals(1, result.size());
+        assertEquals("testDocument.pdf", result.get(0).getDocName());
+        verify(documentRepository, never()).findByUserId(anyLong());
+    }
+
+    @Test
+    public void testConsultLoanDocumentsMeta_CapsThePageSize() {
+        // Given
+        DocumentMeta meta = mock(DocumentMeta.class);
+        when(documentRepository.findMetaByLoanId(eq(1L), any(Pageable.class))).thenReturn(new SliceImpl<>(List.of(meta)));
+
+        // When
+        List<DocumentMeta> result = documentService.consultLoanDocumentsMeta(1L, 2, 10_000);
+
+        //Then
+        assertEquals(1, result.size());
+        verify(documentRepository).findMetaByLoanId(1L, PageRequest.of(2, DocumentService.MAX_PAGE_SIZE, Sort.by("id")));
+    }
+
     @Test
     public void testConsultLoanDocuments_Success() {
         // Given
@@ -153,52 +477,224 @@ public class DocumentServiceTest {
     }
 
     @Test
-    public void testDeleteLoanDocuments_Success() {
+    public void testDeleteLoanDocuments_Success() throws IOException {
         // Given
         Long loanId = 1L;
-        List<DocumentEntity> documents = new ArrayList<>();
-        documents.add(documentEntity);
 
         // When
-        when(documentRepository.findByLoanId(1L)).thenReturn(documents);
+        when(documentRepository.findStorageKeysByLoanIdIn(List.of(loanId))).thenReturn(List.of("key"));
+        when(documentRepository.deleteInBulkByLoanId(loanId)).thenReturn(1);
 
         Boolean result = documentService.deleteLoanDocuments(loanId);
 
         //Then
         assertTrue(result);
-        verify(documentRepository, times(1)).deleteById(1L);
+        verify(documentRepository, times(1)).deleteInBulkByLoanId(loanId);
+        verify(documentRepository, never()).deleteById(anyLong());
+        verify(documentBlobRepository, times(1)).releaseLoanReferences(List.of(loanId));
+        verify(blobStore, times(1)).delete("key");
+    }
+
+    @Test
+    public void testDeleteLoanDocuments_KeepsBlobStillReferenced() throws IOException {
+        // Given
+        when(documentRepository.findStorageKeysByLoanIdIn(List.of(1L))).thenReturn(List.of("key"));
+        when(documentBlobRepository.findReferencedKeys(anyCollection())).thenReturn(List.of("key"));
+
+        // When
+        Boolean result = documentService.deleteLoanDocuments(1L);
+
+        // Then
+        assertTrue(result);
+        verify(documentRepository, times(1)).deleteInBulkByLoanId(1L);
+        verify(blobStore, never()).delete(anyString());
+    }
+
+    @Test
+    public void testDeleteLoanDocuments_FreesBlobOnLastReference() throws IOException {
+        // Given
+        when(documentRepository.findStorageKeysByLoanIdIn(List.of(1L))).thenReturn(List.of("key", "key", "other"));
+        when(documentBlobRepository.findReferencedKeys(anyCollection())).thenReturn(List.of("other"));
+
+        // When
+        Boolean result = documentService.deleteLoanDocuments(1L);
+
+        // Then
+        assertTrue(result);
+        verify(documentBlobRepository, times(1)).deleteUnreferenced(Set.of("key"));
+        verify(blobStore, times(1)).delete("key");
+        verify(blobStore, never()).delete("other");
     }
 
     @Test
-    public void testDeleteLoanDocuments_NoDocumentsFound() {
+    public void testDeleteLoanDocuments_KeepsBlobRegisteredAgainAfterTheCommit() throws IOException {
+        // Given
+        when(documentRepository.findStorageKeysByLoanIdIn(List.of(1L))).thenReturn(List.of("key"));
+        when(documentBlobRepository.existsByStorageKey("key")).thenReturn(true); // A concurrent upload of the same content
+
+        // When
+        Boolean result = documentService.deleteLoanDocuments(1L);
+
+        // Then
+        assertTrue(result);
+        verify(documentBlobRepository, times(1)).deleteUnreferenced(Set.of("key"));
+        verify(blobStore, never()).delete(anyString());
+    }
+
+    @Test
+    public void testDeleteLoanDocuments_NoDocumentsFound() throws IOException {
         //Given
         Long loanId = 1L;
-        List<DocumentEntity> documents = new ArrayList<>();
 
         // When
-        when(documentRepository.findByLoanId(1L)).thenReturn(documents);
+        when(documentRepository.findStorageKeysByLoanIdIn(List.of(loanId))).thenReturn(new ArrayList<>());
 
         Boolean result = documentService.deleteLoanDocuments(loanId);
 
         // Then
         assertTrue(result);
-        verify(documentRepository, never()).deleteById(anyLong());
+        verify(documentBlobRepository, never()).releaseLoanReferences(anyCollection());
+        verify(blobStore, never()).delete(anyString());
     }
 
     @Test
     public void testDeleteLoanDocuments_ExceptionCaught() {
         // Given
         Long loanId = 1L;
-        List<DocumentEntity> documents = new ArrayList<>();
-        documents.add(documentEntity);
 
         // When
-        when(documentRepository.findByLoanId(1L)).thenReturn(documents);
-        doThrow(new RuntimeException("Error deleting document")).when(documentRepository).deleteById(1L);
+        when(documentRepository.findStorageKeysByLoanIdIn(List.of(loanId))).thenReturn(List.of("key"));
+        doThrow(new RuntimeException("Error deleting document")).when(documentRepository).deleteInBulkByLoanId(loanId);
 
         Boolean result = documentService.deleteLoanDocuments(loanId);
 
         //Then
         assertFalse(result);
     }
+
+    @Test
+    public void testDeleteLoansDocuments_ReturnsDeletedRows() {
+        // Given
+        List<Long> loanIds = List.of(1L, 2L, 3L);
+
+        // When
+        when(documentRepository.findStorageKeysByLoanIdIn(loanIds)).thenReturn(List.of("key"));
+        when(documentRepository.deleteInBulkByLoanIdIn(loanIds)).thenReturn(20);
+
+        int result = documentService.deleteLoansDocuments(loanIds);
+
+        //Then
+        assertEquals(20, result);
+        verify(documentBlobRepository, times(1)).releaseLoanReferences(loanIds);
+    }
+
+    @Test
+    public void testDeleteLoansDocuments_EmptyList() {
+        assertEquals(0, documentService.deleteLoansDocuments(List.of()));
+        verify(documentRepository, never()).deleteInBulkByLoanIdIn(anyCollection());
+    }
+
+    @Test
+    public void testUploadDocument_CountsUploadedBytes() throws IOException {
+        // Given
+        when(mockFile.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        when(mockFile.getSize()).thenReturn(3L);
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", true, 3L, false));
+        when(documentRepository.save(any(DocumentEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        documentService.uploadDocument(mockFile, 1L, 1L, "testDocument.pdf");
+
+        // Then
+        assertEquals(3.0, meterRegistry.get("document.bytes").tag("direction", "uploaded").counter().count());
+    }
+
+    @Test
+    public void testOpenDocument_CountsDownloadedBytesAsTheyAreRead() throws IOException {
+        // Given
+        when(blobStore.open("key")).thenReturn(new ByteArrayInputStream(new byte[10]));
+
+        // When
+        try (InputStream in = documentService.openDocument(documentEntity)) {
+            in.read();
+            in.transferTo(new ByteArrayOutputStream());
+        }
+
+        // Then
+        assertEquals(10.0, meterRegistry.get("document.bytes").tag("direction", "downloaded").counter().count());
+    }
+
+    @Test
+    public void testTransferDocument_CountsTransferredBytes() throws IOException {
+        // Given
+        when(blobStore.transferTo(eq("key"), eq(1L), eq(2L), any())).thenReturn(2L);
+
+        // When
+        long transferred = documentService.transferDocument(documentEntity, 1L, 2L, new ByteArrayOutputStream());
+
+        // Then
+        assertEquals(2L, transferred);
+        assertEquals(2.0, meterRegistry.get("document.bytes").tag("direction", "downloaded").counter().count());
+    }
+
+    @Test
+    public void testOpenDocument_NotMigratedLegacyDocument_Throws() {
+        // Given
+        documentEntity.setStorageKey(null);
+
+        // When / Then
+        assertThrows(FileNotFoundException.class, () -> documentService.openDocument(documentEntity));
+        verifyNoInteractions(blobStore);
+    }
+
+    @Test
+    public void testMigrateLegacyContent_StoresTheContentAndRetainsTheBlob() throws IOException {
+        // Given
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", true, 2L, true));
+        when(documentRepository.attachLegacyBlob(eq(1L), eq("key"), eq(3L), eq("hash"), eq(2L), eq(true), anyLong())).thenReturn(1);
+        when(documentBlobRepository.incrementRefCount("key")).thenReturn(0);
+
+        // When
+        boolean migrated = documentService.migrateLegacyContent(1L, () -> new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertTrue(migrated);
+        verify(documentBlobRepository).insertBlob("key", 3L);
+    }
+
+    @Test
+    public void testMigrateLegacyContent_AlreadyMigrated_DoesNotRetain() throws IOException {
+        // Given
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", true, 3L, false));
+        when(documentRepository.attachLegacyBlob(eq(1L), eq("key"), eq(3L), eq("hash"), eq(3L), eq(false), anyLong())).thenReturn(0);
+
+        // When
+        boolean migrated = documentService.migrateLegacyContent(1L, () -> new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8)));
+
+        // Then
+        assertFalse(migrated);
+        verifyNoInteractions(documentBlobRepository);
+    }
+
+    @Test
+    public void testCommitUploadSession_StoresTheContentAgainWhenAReleaseDeletedIt() throws IOException {
+        // Given
+        UploadSessionEntity session = new UploadSessionEntity("s1", 1L, 1L, "doc.pdf", "application/pdf", 1, 3L, new Date());
+        when(uploadSessionRepository.findById("s1")).thenReturn(Optional.of(session));
+        when(uploadSessionRepository.deleteInBulkById("s1")).thenReturn(1);
+        when(uploadStaging.open("s1")).thenAnswer(invocation -> new ByteArrayInputStream("abc".getBytes(StandardCharsets.UTF_8)));
+        when(blobStore.put(any(InputStream.class), anyBoolean())).thenReturn(new StoredBlob("key", 3L, "hash", false, 3L, false));
+        when(blobStore.exists("key")).thenReturn(false); // Deleted between put and the new reference
+        when(documentBlobRepository.incrementRefCount("key")).thenReturn(1);
+        when(documentRepository.save(any(DocumentEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        DocumentEntity result = documentService.commitUploadSession("s1");
+
+        // Then
+        assertEquals("key", result.getStorageKey());
+        verify(uploadStaging, times(2)).open("s1");
+        verify(blobStore, times(2)).put(any(InputStream.class), anyBoolean());
+        verify(documentBlobRepository, times(1)).incrementRefCount("key");
+    }
 }
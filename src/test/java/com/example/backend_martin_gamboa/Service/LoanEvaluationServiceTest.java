@@ -0,0 +1,110 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Dto.LoanEvaluation;
+import com.example.backend_martin_gamboa.Dto.LoanEvaluationRequest;
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import com.example.backend_martin_gamboa.Entity.UserEntity;
+import com.example.backend_martin_gamboa.Repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class LoanEvaluationServiceTest {
+
+    @InjectMocks
+    private LoanEvaluationService loanEvaluationService;
+
+    @Mock
+    private LoanService loanService;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private LoanEntity loan;
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        loan = new LoanEntity();
+        loan.setId(1L);
+        loan.setUserId(2L);
+        loan.setStatus(3);
+        loan.setCapital(100000.0);
+        user = new UserEntity();
+        user.setId(2L);
+    }
+
+    @Test
+    void evaluate_ShouldApprove_WhenEveryRulePasses() {
+        // Given
+        LoanEvaluationRequest request = new LoanEvaluationRequest(2000000.0, 20000.0, true, true, true, false);
+
+        // When
+        when(loanService.getLoanById(1L)).thenReturn(loan);
+        when(userRepository.findById(2L)).thenReturn(Optional.of(user));
+        when(loanService.incomeQuota(loan, 2000000.0)).thenReturn(true);
+        when(loanService.debtIncome(2L, 2000000.0)).thenReturn(true);
+        when(loanService.maxCapital(loan)).thenReturn(true);
+        when(userService.userAge(user)).thenReturn(30);
+        when(userService.ageLimit(30)).thenReturn(true);
+        when(loanService.savingCapacity(20000.0, loan, true, true, true, false)).thenReturn(1);
+
+        LoanEvaluation result = loanEvaluationService.evaluate(1L, request);
+
+        // Then
+        assertTrue(result.getApproved());
+        assertEquals(List.of(), result.getFailedRules());
+        assertEquals(3, result.getStatus());
+        assertEquals(30, result.getAge());
+        verify(loanService, times(1)).getLoanById(1L);
+        verify(userRepository, times(1)).findById(2L);
+    }
+
+    @Test
+    void evaluate_ShouldListFailedRules_AndSkipSavingCapacityWithoutInputs() {
+        // Given
+        LoanEvaluationRequest request = new LoanEvaluationRequest();
+        request.setIncome(100.0);
+
+        // When
+        when(loanService.getLoanById(1L)).thenReturn(loan);
+        when(userRepository.findById(2L)).thenReturn(Optional.empty());
+        when(loanService.incomeQuota(loan, 100.0)).thenReturn(false);
+        when(loanService.debtIncome(2L, 100.0)).thenReturn(false);
+        when(loanService.maxCapital(loan)).thenReturn(true);
+
+        LoanEvaluation result = loanEvaluationService.evaluate(1L, request);
+
+        // Then
+        assertFalse(result.getApproved());
+        assertEquals(List.of("incomeQuota", "debtIncome", "ageLimit"), result.getFailedRules());
+        assertNull(result.getSavingCapacity());
+        assertNull(result.getAge());
+        verify(loanService, never()).savingCapacity(any(), any(LoanEntity.class), any(), any(), any(), any());
+    }
+
+    @Test
+    void evaluate_ShouldReturnNull_WhenLoanDoesNotExist() {
+        // When
+        when(loanService.getLoanById(1L)).thenReturn(null);
+
+        LoanEvaluation result = loanEvaluationService.evaluate(1L, new LoanEvaluationRequest());
+
+        // Then
+        assertNull(result);
+        verifyNoInteractions(userRepository);
+    }
+}
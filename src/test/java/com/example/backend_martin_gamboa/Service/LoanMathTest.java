@@ -0,0 +1,138 @@
+package com.example.backend_martin_gamboa.Service;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class LoanMathTest {
+
+    @Test
+    void rules_ShouldMatchTheBoxedVersions() {
+        for (double capital = 1000; capital < 400000000; capital *= 2.9) {
+            for (double other = 500; other < 600000000; other *= 3.3) {
+                for (int loanType = 0; loanType <= 5; loanType++) {
+                    assertEquals(legacyMaxCapital(capital, other, loanType), LoanMath.maxCapital(capital, other, loanType));
+                }
+                assertEquals(legacyIncomeQuota(capital, other), LoanMath.incomeQuota(capital, other));
+                assertEquals(legacyDebtIncome(capital, other), LoanMath.debtIncome(capital, other));
+                for (int flags = 0; flags < 16; flags++) {
+                    boolean consistent = (flags & 1) != 0, periodic = (flags & 2) != 0, seniority = (flags & 4) != 0, retirement = (flags & 8) != 0;
+                    assertEquals(legacySavingCapacity(other, capital, consistent, periodic, seniority, retirement),
+                            LoanMath.savingCapacity(other, capital, consistent, periodic, seniority, retirement));
+                }
+            }
+        }
+        assertTrue(LoanMath.incomeQuota(0.0, 0.0)); // 0/0 is NaN, which never was over the limit
+    }
+
+    @Test
+    void roundCents_ShouldRoundHalfUp() {
+        assertEquals(188.71, LoanMath.roundCents(188.705));
+        assertEquals(-1.23, LoanMath.roundCents(-1.234));
+        assertEquals(557.0, LoanMath.roundUnits(556.5));
+    }
+
+    @Test
+    void kernel_ShouldNotAllocate() {
+        // Given
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        double sink = run(200000); // Warm up, fills the annuity cache and lets the JIT compile the kernel
+
+        // When
+        long before = allocation.getThreadAllocatedBytes(threadId);
+        sink += run(1000000);
+        long allocated = allocation.getThreadAllocatedBytes(threadId) - before;
+
+        // Then
+        assertTrue(sink != 0);
+        assertTrue(allocated < 1024, "The kernel allocated " + allocated + " bytes");
+    }
+
+    private static double run(int calls) {
+        double sink = 0;
+        for (int i = 0; i < calls; i++) {
+            double capital = 10000000 + (i & 1023) * 1000;
+            int term = 5 + (i & 15);
+            double interest = 3.5 + (i & 7) * 0.25;
+            sink += LoanMath.monthPayment(capital, term, interest);
+            sink += LoanMath.monthTotalPayment(capital, term, interest);
+            sink += LoanMath.totalPayments(capital, term, interest);
+            sink += LoanMath.savingCapacity(capital * 0.2, capital, true, (i & 1) == 0, true, false);
+            sink += LoanMath.maxCapital(capital, capital * 1.5, 1 + (i & 3)) ? 1 : 0;
+            sink += LoanMath.incomeQuota(sink, capital) ? 1 : 0;
+        }
+        return sink;
+    }
+
+    // The rules as they were written in LoanService, over boxed values
+    private static Boolean legacyMaxCapital(Double capital, Double propCost, Integer loanType) {
+        Double maxCapital = 0.0;
+        switch (loanType){
+            case 1:
+                maxCapital = propCost*0.8;
+                break;
+            case 2:
+                maxCapital = propCost*0.7;
+                break;
+            case 3:
+                maxCapital = propCost*0.6;
+                break;
+            case 4:
+                maxCapital = propCost*0.5;
+                break;
+            default:
+                return false;
+        }
+        return maxCapital >= capital;
+    }
+
+    private static Boolean legacyIncomeQuota(Double monthQuota, Double income) {
+        Double incomeQuota = (monthQuota/income)*100;
+        if(incomeQuota > 35){
+            return false;
+        }
+        return true;
+    }
+
+    private static Boolean legacyDebtIncome(Double totalDebt, Double income) {
+        Double threshold = income*0.5;
+        if(totalDebt > threshold){
+            return false;
+        }
+        return true;
+    }
+
+    private static Integer legacySavingCapacity(Double balance, Double loanCapital, Boolean consistenSaving, Boolean periodicSavings, Boolean seniorityBalance, Boolean recentRetirement) {
+        Double capital = loanCapital*0.1;
+        Integer count = 0;
+        if(consistenSaving){
+            count += 1;
+        }
+        if(periodicSavings){
+            count += 1;
+        }
+        if(seniorityBalance){
+            count += 1;
+        }
+        if(!recentRetirement){
+            count += 1;
+        }
+        if(balance >= capital){
+            count += 1;
+        }
+        if(count == 5){
+            return 1;
+        }
+        else if (count == 3 || count == 4) {
+            return 2;
+        }
+        return 3;
+    }
+}
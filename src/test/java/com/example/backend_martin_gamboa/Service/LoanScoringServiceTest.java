@@ -0,0 +1,160 @@
+package com.example.backend_martin_gamboa.Service;
+
+import com.example.backend_martin_gamboa.Entity.LoanEntity;
+import com.example.backend_martin_gamboa.Repository.LoanRepository;
+import com.example.backend_martin_gamboa.Repository.LoanScoreRepository;
+import com.example.backend_martin_gamboa.Repository.UserDebt;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class LoanScoringServiceTest {
+
+    private LoanScoringService loanScoringService;
+
+    @Mock
+    private LoanService loanService;
+
+    @Mock
+    private LoanRepository loanRepository;
+
+    @Mock
+    private LoanScoreRepository loanScoreRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        loanScoringService = new LoanScoringService(loanService, loanRepository, loanScoreRepository, jdbcTemplate, transactionManager, 2, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        loanScoringService.shutdown();
+    }
+
+    private static LoanEntity loan(Long id, Long userId, Double monthQuote) {
+        LoanEntity loan = new LoanEntity();
+        loan.setId(id);
+        loan.setUserId(userId);
+        loan.setMonthQuote(monthQuote);
+        return loan;
+    }
+
+    private static UserDebt debt(Long userId, Double debt) {
+        return new UserDebt() {
+            public Long getUserId() { return userId; }
+            public Double getDebt() { return debt; }
+        };
+    }
+
+    @Test
+    void scoreChunk_ShouldComputeTheIncomeEachRuleNeeds() {
+        // Given
+        LoanEntity loan1 = loan(1L, 10L, 350.0);
+        loan1.setCapital(80_000_000.0);
+        loan1.setPropCost(100_000_000.0);
+        loan1.setLoantype(1); // First home, up to 80% of the property
+        LoanEntity loan2 = loan(2L, 20L, null);
+
+        // When
+        when(loanRepository.sumMonthQuoteByUserIdInAndStatusNotIn(anyCollection(), eq(List.of(7, 8))))
+                .thenReturn(List.of(debt(10L, 1000.0)));
+
+        LoanScoringService.ScoredChunk scored = loanScoringService.scoreChunk(List.of(loan1, loan2));
+
+        // Then
+        assertTrue(scored.maxCapital[0]);
+        assertFalse(scored.maxCapital[1]);
+        verify(loanService, never()).maxCapital(any(LoanEntity.class));
+        assertEquals(1000.0, scored.minIncomeQuota[0], 1e-9);
+        assertTrue(Double.isNaN(scored.minIncomeQuota[1]));
+        assertEquals(1000.0, scored.monthDebt[0]);
+        assertEquals(2000.0, scored.minIncomeDebt[0]);
+        assertEquals(0.0, scored.minIncomeDebt[1]);
+        // The income found passes the rules of LoanService
+        LoanService rules = new LoanService();
+        assertTrue(rules.incomeQuota(loan1, scored.minIncomeQuota[0]));
+        assertFalse(rules.incomeQuota(loan1, scored.minIncomeQuota[0] - 1));
+    }
+
+    @Test
+    void run_ShouldScoreTheQueueInChunks() {
+        // Given
+        LoanScoringService.Job job = new LoanScoringService.Job();
+        List<LoanEntity> first = List.of(loan(1L, 10L, 100.0), loan(2L, 10L, 200.0));
+        List<LoanEntity> second = List.of(loan(5L, 11L, 300.0));
+
+        // When
+        when(loanRepository.countByStatusNotIn(List.of(2, 7, 8))).thenReturn(3L);
+        when(loanService.getLoansForEvaluate(null, 2, false)).thenReturn(first);
+        when(loanService.getLoansForEvaluate(2L, 2, false)).thenReturn(second);
+        when(loanRepository.sumMonthQuoteByUserIdInAndStatusNotIn(anyCollection(), any())).thenReturn(List.of());
+
+        loanScoringService.run(job);
+
+        // Then
+        assertEquals("COMPLETED", job.status().getState());
+        assertEquals(3L, job.status().getTotal());
+        assertEquals(3L, job.status().getProcessed());
+        assertNotNull(job.status().getFinishedDate());
+        verify(loanScoreRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        verify(loanScoreRepository).deleteAllByIdInBatch(List.of(5L));
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+        verify(jdbcTemplate).update(eq("delete from loan_score where scored_date < ?"), any(Timestamp.class));
+    }
+
+    @Test
+    void run_ShouldKeepTheOldScores_WhenAChunkFails() {
+        // Given
+        LoanScoringService.Job job = new LoanScoringService.Job();
+        List<LoanEntity> first = List.of(loan(1L, 10L, 100.0), loan(2L, 10L, 200.0));
+
+        // When
+        when(loanRepository.countByStatusNotIn(List.of(2, 7, 8))).thenReturn(3L);
+        when(loanService.getLoansForEvaluate(null, 2, false)).thenReturn(first);
+        when(loanService.getLoansForEvaluate(2L, 2, false)).thenThrow(new IllegalStateException("sin conexión"));
+        when(loanRepository.sumMonthQuoteByUserIdInAndStatusNotIn(anyCollection(), any())).thenReturn(List.of());
+
+        loanScoringService.run(job);
+
+        // Then
+        assertEquals("FAILED", job.status().getState());
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+        verify(jdbcTemplate, never()).update(anyString(), any(Timestamp.class)); // Old rows stay until a job succeeds
+    }
+
+    @Test
+    void run_ShouldFail_WhenTheDatabaseFails() {
+        // Given
+        LoanScoringService.Job job = new LoanScoringService.Job();
+
+        // When
+        when(loanRepository.countByStatusNotIn(any())).thenThrow(new IllegalStateException("sin conexión"));
+
+        loanScoringService.run(job);
+
+        // Then
+        assertEquals("FAILED", job.status().getState());
+        assertEquals("sin conexión", job.status().getError());
+    }
+}
@@ -2,16 +2,20 @@ package com.example.backend_martin_gamboa.Service;
 
 import com.example.backend_martin_gamboa.Entity.LoanEntity;
 import com.example.backend_martin_gamboa.Repository.LoanRepository;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -24,6 +28,9 @@ class LoanServiceTest {
     @Mock
     private LoanRepository loanRepository;
 
+    @Mock
+    private EntityManager entityManager;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -135,20 +142,12 @@ class LoanServiceTest {
     @Test
     void debtIncome_ShouldReturnFalse_WhenTotalDebtExceedsThreshold() {
         // Given
-        LoanEntity loan1 = new LoanEntity();
-        loan1.setMonthQuote(500.0);
-
-        LoanEntity loan2 = new LoanEntity();
-        loan2.setMonthQuote(800.0);
-
-        List<LoanEntity> loansForEvaluate = new ArrayList<>();
-        loansForEvaluate.add(loan1);
-        loansForEvaluate.add(loan2);
+        Long userId = 1L;
 
         // When
-        when(loanRepository.findByUserId(1L)).thenReturn(loansForEvaluate);
+        when(loanRepository.sumMonthQuoteByUserIdAndStatusNotIn(userId, List.of(7, 8))).thenReturn(1300.0);
 
-        Boolean result = loanService.debtIncome(1L, 2000.0);
+        Boolean result = loanService.debtIncome(userId, 2000.0);
 
         // Then
         assertFalse(result);
@@ -248,25 +247,19 @@ class LoanServiceTest {
     void getLoansForEvaluate_ShouldReturnLoansWithStatusDifferentFrom_2_7_8() {
         // Given
         LoanEntity loan1 = new LoanEntity();
+        loan1.setId(1L);
         loan1.setStatus(1);
-        LoanEntity loan2 = new LoanEntity();
-        loan2.setStatus(2);
-        LoanEntity loan3 = new LoanEntity();
-        loan3.setStatus(7);
-
-        List<LoanEntity> loansForEvaluate = new ArrayList<>();
-        loansForEvaluate.add(loan1);
-        loansForEvaluate.add(loan2);
-        loansForEvaluate.add(loan3);
 
         // When
-        when(loanRepository.findAll()).thenReturn(loansForEvaluate);
+        when(loanRepository.findByStatusNotInAndIdGreaterThan(List.of(2, 7, 8), 0L, PageRequest.of(0, 100, Sort.by("id"))))
+                .thenReturn(List.of(loan1));
 
-        List<LoanEntity> result = loanService.getLoansForEvaluate();
+        List<LoanEntity> result = loanService.getLoansForEvaluate(null, 100, false);
 
         // Then
         assertEquals(1, result.size());
         assertEquals(1, result.get(0).getStatus());
+        verify(loanRepository, never()).findAll();
     }
 
     @Test
@@ -431,23 +424,16 @@ class LoanServiceTest {
     @Test
     void debtIncome_ShouldReturnTrue_WhenTotalDebtIsBelowThreshold() {
         // Given
-        LoanEntity loan1 = new LoanEntity();
-        loan1.setMonthQuote(500.0);
-
-        LoanEntity loan2 = new LoanEntity();
-        loan2.setMonthQuote(300.0);
-
-        List<LoanEntity> loans = new ArrayList<>();
-        loans.add(loan1);
-        loans.add(loan2);
+        Long userId = 1L;
 
         // When
-        when(loanRepository.findByUserId(1L)).thenReturn(loans);
+        when(loanRepository.sumMonthQuoteByUserIdAndStatusNotIn(userId, List.of(7, 8))).thenReturn(800.0);
 
-        Boolean result = loanService.debtIncome(1L, 2000.0);
+        Boolean result = loanService.debtIncome(userId, 2000.0);
 
         // Then
         assertTrue(result);
+        verify(loanRepository, never()).findByUserId(anyLong());
     }
 
     @Test
@@ -538,28 +524,21 @@ class LoanServiceTest {
     }
 
     @Test
-    void getLoansForEvaluate_ShouldReturnOnlyLoansWithStatusDifferentFrom_2_7_8() {
+    void getLoansForEvaluate_ShouldReadDescendingPageAfterCursor() {
         // Given
         LoanEntity loan1 = new LoanEntity();
-        loan1.setStatus(1);
-        LoanEntity loan2 = new LoanEntity();
-        loan2.setStatus(2);
-        LoanEntity loan3 = new LoanEntity();
-        loan3.setStatus(8);
-
-        List<LoanEntity> loans = new ArrayList<>();
-        loans.add(loan1);
-        loans.add(loan2);
-        loans.add(loan3);
+        loan1.setId(41L);
+        loan1.setStatus(3);
 
         // When
-        when(loanRepository.findAll()).thenReturn(loans);
+        when(loanRepository.findByStatusNotInAndIdLessThan(List.of(2, 7, 8), 42L, PageRequest.of(0, 1000, Sort.by("id").descending())))
+                .thenReturn(List.of(loan1));
 
-        List<LoanEntity> result = loanService.getLoansForEvaluate();
+        List<LoanEntity> result = loanService.getLoansForEvaluate(42L, 5000, true);
 
         // Then
         assertEquals(1, result.size());
-        assertEquals(1, result.get(0).getStatus());
+        assertEquals(41L, result.get(0).getId());
     }
 
     @Test
@@ -859,6 +838,211 @@ class LoanServiceTest {
         assertNotNull(result);
         assertTrue(result.isEmpty());
     }
-}
 
+    @Test
+    void amortizationSchedule_ShouldReturnSchedule_WhenLoanExists() {
+        // Given
+        LoanEntity loan = new LoanEntity();
+        loan.setId(1L);
+        loan.setCapital(1000000.0);
+        loan.setTerm(10);
+        loan.setInterest(4.0);
+
+        // When
+        when(loanRepository.findById(1L)).thenReturn(Optional.of(loan));
+        AmortizationSchedule result = loanService.amortizationSchedule(1L);
+
+        // Then
+        assertNotNull(result);
+        assertEquals(120, result.getPayments());
+    }
+
+    @Test
+    void amortizationSchedule_ShouldReturnNull_WhenLoanDoesNotExist() {
+        // When
+        when(loanRepository.findById(1L)).thenReturn(Optional.empty());
+        AmortizationSchedule result = loanService.amortizationSchedule(1L);
+
+        // Then
+        assertNull(result);
+    }
+
+    @Test
+    void simulateLoans_ShouldReturnPaymentsInInputOrder() {
+        // Given
+        LoanSimulationBatch batch = LoanSimulationBatch.fromRows(new double[][]{{10000.0, 5, 5.0}, {-10000.0, 5, 5.0}});
+
+        // When
+        double[] result = loanService.simulateLoans(batch);
+
+        // Then
+        assertEquals(loanService.simulateLoan(10000.0, 5, 5.0), result[0]);
+        assertEquals(loanService.simulateLoan(-10000.0, 5, 5.0), result[1]);
+    }
+
+    @Test
+    void createLoan_ShouldComputeQuoteAndTotalBeforeASingleSave() {
+        // Given
+        LoanEntity loan = new LoanEntity();
+        loan.setCapital(50000000.0);
+        loan.setTerm(20);
+        loan.setInterest(4.5);
+
+        // When
+        when(loanRepository.save(loan)).thenReturn(loan);
+        LoanEntity result = loanService.createLoan(loan);
+
+        // Then
+        assertEquals(500000.0, result.getMonthFee());
+        assertEquals(loanService.monthTotalPayments(loan), result.getMonthQuote());
+        assertEquals(loanService.totalPayments(loan), result.getTotal());
+        assertEquals(result.getMonthQuote() * 240 + result.getMonthFee(), result.getTotal());
+        verify(loanRepository, times(1)).save(loan);
+        verify(loanRepository, never()).findById(any());
+    }
+
+    @Test
+    void totalPayments_ShouldReturnSameAsById() {
+        // Given
+        LoanEntity loan = new LoanEntity();
+        loan.setId(1L);
+        loan.setCapital(50000.0);
+        loan.setTerm(5);
+        loan.setInterest(3.5);
+
+        // When
+        when(loanRepository.findById(1L)).thenReturn(Optional.of(loan));
 
+        // Then
+        assertEquals(loanService.totalPayments(1L), loanService.totalPayments(loan));
+        assertNull(loanService.totalPayments((LoanEntity) null));
+    }
+
+    @Test
+    void getLoans_ShouldReturnFirstPage_WhenCursorIsNull() {
+        // Given
+        LoanEntity loan = new LoanEntity();
+        loan.setId(1L);
+
+        // When
+        when(loanRepository.findByIdGreaterThan(0L, PageRequest.of(0, 50, Sort.by("id")))).thenReturn(List.of(loan));
+        List<LoanEntity> result = loanService.getLoans(null, 50);
+
+        // Then
+        assertEquals(List.of(loan), result);
+        verify(loanRepository, never()).findAll();
+    }
+
+    @Test
+    void forEachLoan_ShouldHandEveryLoanAndDetachIt() {
+        // Given
+        LoanEntity loan1 = new LoanEntity();
+        loan1.setId(1L);
+        LoanEntity loan2 = new LoanEntity();
+        loan2.setId(2L);
+        List<LoanEntity> seen = new ArrayList<>();
+
+        // When
+        when(loanRepository.streamAllByOrderById()).thenReturn(Stream.of(loan1, loan2));
+        loanService.forEachLoan(seen::add);
+
+        // Then
+        assertEquals(List.of(loan1, loan2), seen);
+        verify(entityManager).detach(loan1);
+        verify(entityManager).detach(loan2);
+    }
+
+    @Test
+    void forEachLoanForEvaluate_ShouldStreamTheQueueInTheRequestedOrderAndDetachIt() {
+        // Given
+        LoanEntity loan1 = new LoanEntity();
+        loan1.setId(5L);
+        LoanEntity loan2 = new LoanEntity();
+        loan2.setId(3L);
+        List<LoanEntity> seen = new ArrayList<>();
+
+        // When
+        when(loanRepository.streamByStatusNotIn(List.of(2, 7, 8), Sort.by("id").descending())).thenReturn(Stream.of(loan1, loan2));
+        loanService.forEachLoanForEvaluate(true, seen::add);
+
+        // Then
+        assertEquals(List.of(loan1, loan2), seen);
+        verify(entityManager).detach(loan1);
+        verify(entityManager).detach(loan2);
+    }
+
+    @Test
+    void debtIncome_ShouldQueryTheDebtOnce_UntilALoanOfTheUserChanges() throws Exception {
+        // Given
+        LoanEntity loan = new LoanEntity();
+        loan.setId(3L);
+        loan.setUserId(1L);
+
+        // When
+        when(loanRepository.sumMonthQuoteByUserIdAndStatusNotIn(1L, List.of(7, 8))).thenReturn(800.0, 1200.0, 1300.0);
+        when(loanRepository.findById(3L)).thenReturn(Optional.of(loan));
+
+        Boolean first = loanService.debtIncome(1L, 2000.0);
+        Boolean cached = loanService.debtIncome(1L, 2000.0);
+        loanService.updateState(loan, 3);
+        Boolean afterUpdate = loanService.debtIncome(1L, 2000.0);
+        loanService.deleteLoan(3L);
+        Double afterDelete = loanService.monthDebt(1L);
+
+        // Then
+        assertTrue(first);
+        assertTrue(cached);
+        assertFalse(afterUpdate);
+        assertEquals(1300.0, afterDelete);
+        verify(loanRepository, times(3)).sumMonthQuoteByUserIdAndStatusNotIn(1L, List.of(7, 8));
+    }
+
+    @Test
+    void updateLoan_ShouldDropTheDebtOfThePreviousAndTheNewUser() {
+        // Given
+        LoanEntity stored = new LoanEntity();
+        stored.setId(3L);
+        stored.setUserId(1L);
+        LoanEntity moved = new LoanEntity();
+        moved.setId(3L);
+        moved.setUserId(2L);
+
+        // When
+        when(loanRepository.sumMonthQuoteByUserIdAndStatusNotIn(anyLong(), eq(List.of(7, 8)))).thenReturn(100.0);
+        when(loanRepository.findById(3L)).thenReturn(Optional.of(stored));
+        loanService.monthDebt(1L);
+        loanService.monthDebt(2L);
+        loanService.updateLoan(moved);
+        loanService.monthDebt(1L);
+        loanService.monthDebt(2L);
+
+        // Then
+        verify(loanRepository, times(2)).sumMonthQuoteByUserIdAndStatusNotIn(1L, List.of(7, 8));
+        verify(loanRepository, times(2)).sumMonthQuoteByUserIdAndStatusNotIn(2L, List.of(7, 8));
+    }
+
+    @Test
+    void updateMonthQuoteAndTotal_ShouldDropTheDebtOfTheUser() {
+        // Given
+        LoanEntity loan = new LoanEntity();
+        loan.setId(3L);
+        loan.setUserId(1L);
+        loan.setCapital(50000.0);
+        loan.setTerm(5);
+        loan.setInterest(3.5);
+
+        // When
+        when(loanRepository.sumMonthQuoteByUserIdAndStatusNotIn(1L, List.of(7, 8))).thenReturn(100.0, 200.0, 300.0);
+        when(loanRepository.findById(3L)).thenReturn(Optional.of(loan));
+        Double before = loanService.monthDebt(1L);
+        loanService.updateMonthQuote(loan);
+        Double afterMonthQuote = loanService.monthDebt(1L);
+        loanService.updateTotal(loan);
+        Double afterTotal = loanService.monthDebt(1L);
+
+        // Then
+        assertEquals(100.0, before);
+        assertEquals(200.0, afterMonthQuote);
+        assertEquals(300.0, afterTotal);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.backend_martin_gamboa.Service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanSimulationBatchTest {
+
+    @Test
+    void simulate_ShouldMatchSimulateLoanInInputOrder() {
+        // Given
+        int size = 5000;
+        double[][] rows = new double[size][];
+        for (int i = 0; i < size; i++) {
+            rows[i] = new double[]{1000000.0 + i * 1000, 1 + i % 30, 2.0 + (i % 50) / 10.0};
+        }
+        LoanService loanService = new LoanService();
+
+        // When
+        double[] result = LoanSimulationBatch.fromRows(rows).simulate(ForkJoinPool.commonPool());
+
+        // Then
+        assertEquals(size, result.length);
+        for (int i = 0; i < size; i++) {
+            assertEquals(loanService.simulateLoan(rows[i][0], (int) rows[i][1], rows[i][2]), result[i]);
+        }
+    }
+
+    @Test
+    void fromCsv_ShouldSkipHeaderAndBlankLines() {
+        // Given
+        String csv = "capital,term,interest\r\n10000,5,5\n\n20000,10,4.5\n";
+
+        // When
+        LoanSimulationBatch batch = LoanSimulationBatch.fromCsv(csv);
+        double[] result = batch.simulate(ForkJoinPool.commonPool());
+
+        // Then
+        assertEquals(2, batch.size());
+        assertEquals(LoanMath.monthPayment(10000, 5, 5), result[0]);
+        assertEquals(LoanMath.monthPayment(20000, 10, 4.5), result[1]);
+    }
+
+    @Test
+    void fromCsv_ShouldThrow_WhenLineIsInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromCsv("10000,5,5\n10000,abc,5"));
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromCsv("10000,5"));
+    }
+
+    @Test
+    void fromRowsAndCsv_ShouldThrow_WhenTermIsTooLong() {
+        // 1e12 would be cast to Integer.MAX_VALUE, 200000000 overflows term * 12
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromRows(new double[][]{{10000, 1e12, 5}}));
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromRows(new double[][]{{10000, LoanMath.MAX_TERM + 1, 5}}));
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromCsv("10000,200000000,5"));
+        assertEquals(1, LoanSimulationBatch.fromRows(new double[][]{{10000, LoanMath.MAX_TERM, 5}}).size());
+    }
+
+    @Test
+    void fromRows_ShouldThrow_WhenRowIsInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromRows(new double[][]{{10000, 5}}));
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromRows(new double[][]{{10000, 5.5, 4}}));
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromRows(new double[][]{{10000, 0, 4}}));
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromRows(new double[0][]));
+        assertThrows(IllegalArgumentException.class, () -> LoanSimulationBatch.fromRows(new double[LoanSimulationBatch.MAX_SIZE + 1][]));
+    }
+}
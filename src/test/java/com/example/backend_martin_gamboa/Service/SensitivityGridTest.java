@@ -0,0 +1,49 @@
+package com.example.backend_martin_gamboa.Service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensitivityGridTest {
+
+    @Test
+    void of_ShouldMatchSimulateLoanForEveryCell() {
+        // Given
+        LoanService loanService = new LoanService();
+        double capital = 120000000.0;
+
+        // When
+        SensitivityGrid grid = SensitivityGrid.of(capital, 1.0, 0.1, 100, 1, 30);
+
+        // Then
+        assertEquals(100, grid.getRates().length);
+        assertEquals(30, grid.getTerms().length);
+        assertEquals(3000, grid.getQuotes().length);
+        for (int r = 0; r < grid.getRates().length; r++) {
+            for (int t = 0; t < grid.getTerms().length; t++) {
+                Double expected = loanService.simulateLoan(capital, grid.getTerms()[t], grid.getRates()[r]);
+                assertEquals(expected, grid.getQuotes()[r * grid.getTerms().length + t]);
+            }
+        }
+    }
+
+    @Test
+    void of_ShouldUseTheRequestedRanges() {
+        // When
+        SensitivityGrid grid = SensitivityGrid.of(1000000.0, 3.5, 0.5, 3, 5, 7);
+
+        // Then
+        assertArrayEquals(new double[]{3.5, 4.0, 4.5}, grid.getRates());
+        assertArrayEquals(new int[]{5, 6, 7}, grid.getTerms());
+        assertEquals(1000000.0, grid.getCapital());
+    }
+
+    @Test
+    void of_ShouldThrow_WhenRangesAreInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> SensitivityGrid.of(1000.0, 1.0, 0.1, 0, 1, 30));
+        assertThrows(IllegalArgumentException.class, () -> SensitivityGrid.of(1000.0, 1.0, 0.1, SensitivityGrid.MAX_RATES + 1, 1, 30));
+        assertThrows(IllegalArgumentException.class, () -> SensitivityGrid.of(1000.0, 1.0, 0.1, 10, 0, 30));
+        assertThrows(IllegalArgumentException.class, () -> SensitivityGrid.of(1000.0, 1.0, 0.1, 10, 10, 5));
+        assertThrows(IllegalArgumentException.class, () -> SensitivityGrid.of(1000.0, 0.0, 0.1, 10, 1, 30));
+    }
+}
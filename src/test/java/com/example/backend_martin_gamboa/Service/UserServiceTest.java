@@ -3,11 +3,14 @@ package com.example.backend_martin_gamboa.Service;
 import com.example.backend_martin_gamboa.Entity.LoanEntity;
 import com.example.backend_martin_gamboa.Entity.UserEntity;
 import com.example.backend_martin_gamboa.Repository.UserRepository;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 
 import java.time.LocalDate;
 import java.time.ZoneId;
@@ -15,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -27,6 +31,9 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private EntityManager entityManager;
+
     @InjectMocks
     private UserService userService;
 
@@ -406,4 +413,33 @@ public class UserServiceTest {
         //Then
         assertThat(age).isEqualTo(0);
     }
+
+    @Test
+    void whenGetUsersAfterCursor_thenReturnNextPage() {
+        // Given
+        when(userRepository.findByIdGreaterThan(5L, PageRequest.of(0, 1000, Sort.by("id")))).thenReturn(List.of(user));
+
+        // When
+        List<UserEntity> users = userService.getUsers(5L, 2000);
+
+        // Then
+        assertThat(users).containsExactly(user);
+    }
+
+    @Test
+    void whenForEachUser_thenEveryUserIsHandedAndDetached() {
+        // Given
+        UserEntity other = new UserEntity();
+        other.setId(2L);
+        when(userRepository.streamAllByOrderById()).thenReturn(Stream.of(user, other));
+        List<UserEntity> seen = new ArrayList<>();
+
+        // When
+        userService.forEachUser(seen::add);
+
+        // Then
+        assertThat(seen).containsExactly(user, other);
+        verify(entityManager).detach(user);
+        verify(entityManager).detach(other);
+    }
 }
@@ -0,0 +1,186 @@
+package com.example.backend_martin_gamboa.Storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalBlobStoreTest {
+
+    @TempDir
+    Path root;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new LocalBlobStore(root.toString());
+    }
+
+    @Test
+    void put_ShouldStoreContentAndReturnSizeAndHash() throws IOException {
+        // Given
+        byte[] content = "hola".getBytes(StandardCharsets.UTF_8);
+
+        // When
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream(content), false);
+
+        // Then
+        assertEquals(4L, blob.getSize());
+        assertEquals("b221d9dbb083a7f33428d7c2a3c3198ae925614d70210e28716ccaa7cd4ddb79", blob.getSha256());
+        assertEquals(blob.getSha256(), blob.getKey());
+        assertTrue(blob.getCreated());
+        try (InputStream in = blobStore.open(blob.getKey())) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void put_ShouldHandleContentBiggerThanTheBuffer() throws IOException {
+        // Given
+        byte[] content = new byte[LocalBlobStore.BUFFER_SIZE * 3 + 17];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        // When
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream(content), false);
+
+        // Then
+        assertEquals(content.length, blob.getSize());
+        assertArrayEquals(content, Files.readAllBytes(blobStore.resolve(blob.getKey())));
+    }
+
+    @Test
+    void put_ShouldStoreTheSameContentOnlyOnce() throws IOException {
+        // Given
+        byte[] content = "misma boleta".getBytes(StandardCharsets.UTF_8);
+
+        // When
+        StoredBlob first = blobStore.put(new ByteArrayInputStream(content), false);
+        StoredBlob second = blobStore.put(new ByteArrayInputStream(content), false);
+
+        // Then
+        assertEquals(first.getKey(), second.getKey());
+        assertTrue(first.getCreated());
+        assertFalse(second.getCreated());
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count()); // No temporary files left behind
+        }
+    }
+
+    @Test
+    void put_ShouldCompressAndReturnTheOriginalContent() throws IOException {
+        // Given
+        byte[] content = "Certificado de avaluo fiscal. ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+        // When
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream(content), true);
+
+        // Then
+        assertTrue(blob.getCompressed());
+        assertEquals(content.length, blob.getSize());
+        assertTrue(blob.getStoredSize() < content.length / 10);
+        try (InputStream in = blobStore.open(blob.getKey())) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        blobStore.transferTo(blob.getKey(), 30, 29, Channels.newChannel(out));
+        assertEquals("Certificado de avaluo fiscal.", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void put_ShouldReuseTheExistingBlobWhateverTheCompression() throws IOException {
+        // Given
+        byte[] content = "misma boleta ".repeat(100).getBytes(StandardCharsets.UTF_8);
+        StoredBlob first = blobStore.put(new ByteArrayInputStream(content), false);
+
+        // When
+        StoredBlob second = blobStore.put(new ByteArrayInputStream(content), true);
+
+        // Then
+        assertFalse(second.getCreated());
+        assertFalse(second.getCompressed()); // Reported as it is actually stored
+        assertEquals(first.getStoredSize(), second.getStoredSize());
+    }
+
+    @Test
+    void delete_ShouldRemoveCompressedBlobs() throws IOException {
+        // Given
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream(new byte[4096]), true);
+
+        // When
+        blobStore.delete(blob.getKey());
+
+        // Then
+        assertThrows(IOException.class, () -> blobStore.open(blob.getKey()));
+    }
+
+    @Test
+    void exists_ShouldFollowPutAndDelete() throws IOException {
+        // Given
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream(new byte[4096]), true);
+
+        // When / Then
+        assertTrue(blobStore.exists(blob.getKey()));
+        blobStore.delete(blob.getKey());
+        assertFalse(blobStore.exists(blob.getKey()));
+    }
+
+    @Test
+    void transferTo_ShouldCopyOnlyTheRequestedRange() throws IOException {
+        // Given
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream("0123456789".getBytes(StandardCharsets.UTF_8)), false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long written = blobStore.transferTo(blob.getKey(), 2, 5, Channels.newChannel(out));
+
+        // Then
+        assertEquals(5, written);
+        assertEquals("23456", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void transferTo_ShouldStopAtTheEndOfTheBlob() throws IOException {
+        // Given
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream("0123456789".getBytes(StandardCharsets.UTF_8)), false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long written = blobStore.transferTo(blob.getKey(), 8, 100, Channels.newChannel(out));
+
+        // Then
+        assertEquals(2, written);
+        assertEquals("89", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void delete_ShouldRemoveTheBlob() throws IOException {
+        // Given
+        StoredBlob blob = blobStore.put(new ByteArrayInputStream(new byte[]{1, 2, 3}), false);
+
+        // When
+        blobStore.delete(blob.getKey());
+        blobStore.delete(blob.getKey()); // Deleting twice is not an error
+
+        // Then
+        assertFalse(Files.exists(blobStore.resolve(blob.getKey())));
+    }
+
+    @Test
+    void resolve_ShouldRejectKeysOutsideTheRoot() {
+        assertThrows(IllegalArgumentException.class, () -> blobStore.open("../secret"));
+    }
+}
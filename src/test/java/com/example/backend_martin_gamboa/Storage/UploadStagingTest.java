@@ -0,0 +1,65 @@
+package com.example.backend_martin_gamboa.Storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadStagingTest {
+
+    @TempDir
+    Path root;
+
+    private UploadStaging staging;
+
+    @BeforeEach
+    void setUp() {
+        staging = new UploadStaging(root.toString());
+    }
+
+    @Test
+    void append_ShouldDiscardBytesOfAFailedChunk() throws IOException {
+        // Given
+        String session = "0a1b2c";
+        staging.append(session, 0, stream("abc"), 100);
+        staging.append(session, 3, stream("dXX"), 100); // Chunk that the server never acknowledged
+
+        // When
+        long written = staging.append(session, 3, stream("def"), 100);
+
+        // Then
+        assertEquals(3, written);
+        try (InputStream in = staging.open(session)) {
+            assertEquals("abcdef", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void append_ShouldFailWhenTheUploadIsTooBig() throws IOException {
+        // Given
+        String session = "0a1b2c";
+        staging.append(session, 0, stream("abc"), 5);
+
+        // When / Then
+        assertThrows(IOException.class, () -> staging.append(session, 3, stream("def"), 5));
+        try (InputStream in = staging.open(session)) {
+            assertEquals("abc", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void open_ShouldRejectInvalidSessionIds() {
+        assertThrows(IllegalArgumentException.class, () -> staging.open("../../etc/passwd"));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}